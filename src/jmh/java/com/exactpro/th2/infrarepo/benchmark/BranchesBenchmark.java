@@ -0,0 +1,107 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.benchmark;
+
+import com.exactpro.th2.infrarepo.git.Gitter;
+import com.exactpro.th2.infrarepo.git.GitterContext;
+import com.exactpro.th2.infrarepo.repo.Repository;
+import com.exactpro.th2.infrarepo.repo.RepositorySnapshot;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start: loading snapshots of all branches into empty local repository root
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class BranchesBenchmark {
+
+    @Param({"10", "50"})
+    public int branches;
+
+    @Param({"100"})
+    public int boxes;
+
+    @Param({"8"})
+    public int parallelism;
+
+    private LocalRemote remote;
+
+    private GitterContext ctx;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, GitAPIException {
+        remote = LocalRemote.create(new SchemaGenerator(boxes, Math.max(1, boxes / 10), 4096), branches);
+        ctx = remote.newContext();
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteLocal() throws IOException {
+        LocalRemote.deleteLocal(ctx);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ctx.close();
+        remote.close();
+    }
+
+    @Benchmark
+    public void getSnapshots(Blackhole blackhole) {
+        for (CompletableFuture<RepositorySnapshot> snapshot
+                : Repository.getSnapshots(ctx, remote.getBranches(), parallelism).values()) {
+            blackhole.consume(snapshot.join());
+        }
+    }
+
+    /**
+     * Baseline for {@link #getSnapshots(Blackhole)}: branches are loaded one after another
+     */
+    @Benchmark
+    public void getSnapshotsSequentially(Blackhole blackhole) throws IOException, GitAPIException {
+        for (String branch : remote.getBranches()) {
+            Gitter gitter = ctx.getGitter(branch);
+            gitter.lock();
+            try {
+                blackhole.consume(Repository.getSnapshot(gitter));
+            } finally {
+                gitter.unlock();
+            }
+        }
+    }
+}
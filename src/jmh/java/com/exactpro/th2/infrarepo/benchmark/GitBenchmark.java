@@ -0,0 +1,185 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.benchmark;
+
+import com.exactpro.th2.infrarepo.InconsistentRepositoryStateException;
+import com.exactpro.th2.infrarepo.ResourceType;
+import com.exactpro.th2.infrarepo.git.Gitter;
+import com.exactpro.th2.infrarepo.git.GitterContext;
+import com.exactpro.th2.infrarepo.repo.ChangeSet;
+import com.exactpro.th2.infrarepo.repo.RepositoryResource;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.exactpro.th2.infrarepo.SchemaUtils.YAML_MAPPER;
+
+/**
+ * Git operations of a single branch against local remote repository with the given number of history
+ * commits and other branches. Every invocation works on a new commit, prepared outside of the measured code
+ * by the invocation level state the benchmark takes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GitBenchmark {
+
+    @Param({"100", "1000"})
+    public int boxes;
+
+    @Param({"0", "200"})
+    public int history;
+
+    @Param({"1", "10"})
+    public int branches;
+
+    private SchemaGenerator generator;
+
+    private LocalRemote remote;
+
+    private GitterContext ctx;
+
+    private Gitter gitter;
+
+    private int version;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, GitAPIException {
+        generator = new SchemaGenerator(boxes, Math.max(1, boxes / 10), 4096);
+        remote = LocalRemote.create(generator, branches, history);
+        // history commits set box versions up to history, later versions always change the box
+        version = history;
+        ctx = remote.newContext();
+        gitter = ctx.getGitter(LocalRemote.MAIN_BRANCH);
+        gitter.checkout();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ctx.close();
+        remote.close();
+    }
+
+    // moves to the next version and returns index of the box it changes
+    private int nextBox() {
+        version++;
+        return version % boxes;
+    }
+
+    private byte[] box(int index) throws IOException {
+        return generator.box(SchemaGenerator.boxName(index), index, version);
+    }
+
+    private static String boxPath(int index) {
+        return SchemaGenerator.path(ResourceType.Th2Box, SchemaGenerator.boxName(index));
+    }
+
+    @State(Scope.Benchmark)
+    public static class RemoteChange {
+        @Setup(Level.Invocation)
+        public void commit(GitBenchmark benchmark) throws IOException {
+            int index = benchmark.nextBox();
+            benchmark.remote.commit(LocalRemote.MAIN_BRANCH, Map.of(boxPath(index), benchmark.box(index)),
+                    List.of(), "remote change");
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class EmptyCache {
+        @Setup(Level.Invocation)
+        public void delete(GitBenchmark benchmark) throws IOException {
+            LocalRemote.deleteLocal(benchmark.ctx);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LocalChange {
+        @Setup(Level.Invocation)
+        public void write(GitBenchmark benchmark) throws IOException {
+            int index = benchmark.nextBox();
+            File file = new File(benchmark.ctx.getLocalRepositoryRoot() + "/" + LocalRemote.MAIN_BRANCH,
+                    boxPath(index));
+            Files.write(file.toPath(), benchmark.box(index));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ResourceChange {
+
+        private RepositoryResource resource;
+
+        @Setup(Level.Invocation)
+        public void parse(GitBenchmark benchmark) throws IOException {
+            resource = YAML_MAPPER.readValue(benchmark.box(benchmark.nextBox()), RepositoryResource.class);
+        }
+    }
+
+    /**
+     * Fetch of one new commit and update of the working tree
+     */
+    @Benchmark
+    public String checkout(RemoteChange change) throws IOException, GitAPIException {
+        return gitter.checkout();
+    }
+
+    /**
+     * Download of the whole repository and checkout into empty local repository root
+     */
+    @Benchmark
+    public String cloneBranch(EmptyCache empty) throws IOException, GitAPIException {
+        return gitter.checkout();
+    }
+
+    /**
+     * Commit of one changed file of the working tree and push
+     */
+    @Benchmark
+    public String commitAndPush(LocalChange change)
+            throws IOException, GitAPIException, InconsistentRepositoryStateException {
+        return gitter.commitAndPush("local change");
+    }
+
+    /**
+     * Commit of one changed resource built in the object database and push
+     */
+    @Benchmark
+    public String commitChangeSet(ResourceChange change)
+            throws IOException, GitAPIException, InconsistentRepositoryStateException {
+        return new ChangeSet().put(change.resource).commitAndPush(gitter, "change set");
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencies of load test operations recorded by concurrent workers, summarized per operation
+ * as percentiles and throughput over the whole run
+ */
+public class Latencies {
+
+    public static final String COUNT = "count";
+
+    public static final String FAILURES = "failures";
+
+    public static final String P50 = "p50";
+
+    public static final String P99 = "p99";
+
+    public static final String MAX = "max";
+
+    public static final String THROUGHPUT = "throughput";
+
+    private final Map<String, List<Long>> latencies = new LinkedHashMap<>();
+
+    private final Map<String, Integer> failures = new LinkedHashMap<>();
+
+    public synchronized void record(String operation, long nanos) {
+        latencies.computeIfAbsent(operation, key -> new ArrayList<>()).add(nanos);
+    }
+
+    public synchronized void fail(String operation) {
+        latencies.computeIfAbsent(operation, key -> new ArrayList<>());
+        failures.merge(operation, 1, Integer::sum);
+    }
+
+    /**
+     * @param elapsedNanos duration of the whole run
+     * @return Map, whose keys are operation names and values are maps of {@link #COUNT} and {@link #FAILURES},
+     * {@link #P50}, {@link #P99} and {@link #MAX} latencies in milliseconds and {@link #THROUGHPUT}
+     * in successful operations per second
+     */
+    public synchronized Map<String, Map<String, Number>> summary(long elapsedNanos) {
+
+        Map<String, Map<String, Number>> summary = new LinkedHashMap<>();
+        latencies.forEach((operation, values) -> {
+            long[] sorted = values.stream().mapToLong(Long::longValue).sorted().toArray();
+            Map<String, Number> stats = new LinkedHashMap<>();
+            stats.put(COUNT, sorted.length);
+            stats.put(FAILURES, failures.getOrDefault(operation, 0));
+            stats.put(P50, millis(percentile(sorted, 50)));
+            stats.put(P99, millis(percentile(sorted, 99)));
+            stats.put(MAX, millis(sorted.length == 0 ? 0 : sorted[sorted.length - 1]));
+            stats.put(THROUGHPUT, round(sorted.length * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos));
+            summary.put(operation, stats);
+        });
+        return summary;
+    }
+
+    // nearest-rank percentile
+    private static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    private static double millis(long nanos) {
+        return round(nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.benchmark;
+
+import com.exactpro.th2.infrarepo.ResourceType;
+import com.exactpro.th2.infrarepo.SchemaUtils;
+import com.exactpro.th2.infrarepo.git.Gitter;
+import com.exactpro.th2.infrarepo.repo.Repository;
+import com.exactpro.th2.infrarepo.repo.RepositoryResource;
+import com.exactpro.th2.infrarepo.repo.RepositorySnapshot;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading and converting schema of a checked out branch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+
+    @Param({"100", "1000"})
+    public int boxes;
+
+    @Param({"4096", "262144"})
+    public int dictionarySize;
+
+    private LocalRemote remote;
+
+    private Gitter gitter;
+
+    private String commitRef;
+
+    private Set<RepositoryResource> resources;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, GitAPIException {
+        remote = LocalRemote.create(new SchemaGenerator(boxes, Math.max(1, boxes / 10), dictionarySize), 1);
+        gitter = remote.newContext().getGitter(LocalRemote.MAIN_BRANCH);
+        commitRef = gitter.checkout();
+        resources = Repository.getSnapshot(gitter).getResources();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        gitter.getContext().close();
+        remote.close();
+    }
+
+    /**
+     * Checkout of the branch that did not change since the previous one and parsing of the whole working tree
+     */
+    @Benchmark
+    public RepositorySnapshot getSnapshot() throws IOException, GitAPIException {
+        return Repository.getSnapshot(gitter);
+    }
+
+    /**
+     * Parsing of the whole commit straight from the object database
+     */
+    @Benchmark
+    public RepositorySnapshot readSnapshot() throws IOException {
+        return Repository.readSnapshot(gitter, commitRef);
+    }
+
+    /**
+     * Reading, digesting and parsing of the single largest file
+     */
+    @Benchmark
+    public RepositoryResource getDictionary() throws IOException {
+        return Repository.getResource(gitter, ResourceType.Th2Dictionary.kind(), SchemaGenerator.dictionaryName(0));
+    }
+
+    @Benchmark
+    public Map<String, Map<String, RepositoryResource>> convertToRepositoryMap() {
+        return SchemaUtils.convertToRepositoryMap(resources);
+    }
+}
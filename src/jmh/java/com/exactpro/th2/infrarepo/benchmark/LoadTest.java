@@ -0,0 +1,327 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.benchmark;
+
+import com.exactpro.th2.infrarepo.git.Gitter;
+import com.exactpro.th2.infrarepo.git.GitterContext;
+import com.exactpro.th2.infrarepo.repo.ChangeSet;
+import com.exactpro.th2.infrarepo.repo.Repository;
+import com.exactpro.th2.infrarepo.repo.RepositoryResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.exactpro.th2.infrarepo.SchemaUtils.YAML_MAPPER;
+
+/**
+ * End-to-end load test: concurrent writers clone branches of a generated local remote repository and then
+ * repeat poll, modify and push cycles against it. Some writers modify the working tree and commit it,
+ * the others commit {@link ChangeSet}s. Latency percentiles and throughput of each operation are written
+ * to the report file and compared with the thresholds file.
+ * <p>
+ * Arguments are {@code name=value} pairs overriding {@link #DEFAULTS} and the options:
+ * <ul>
+ *     <li>{@code report} - path of the report file, default {@code load-test.yml}</li>
+ *     <li>{@code thresholds} - path of the thresholds file, default is the {@value #THRESHOLDS_RESOURCE}
+ *     resource. Report of a previous run can be used as the thresholds file</li>
+ *     <li>{@code tolerance} - factor latency and failure thresholds are multiplied by and throughput thresholds
+ *     are divided by, default {@value #DEFAULT_TOLERANCE}</li>
+ * </ul>
+ * Thresholds are only checked if they were recorded with the same parameters as the current run,
+ * so giving {@code tolerance} for a run with other parameters fails it with {@link IllegalArgumentException}
+ * before the load starts. Exceeded thresholds fail the run with {@link IllegalStateException}
+ */
+public class LoadTest {
+
+    public static final String CLONE = "clone";
+
+    public static final String POLL = "poll";
+
+    public static final String UPDATE = "update";
+
+    public static final String PUSH = "commitAndPush";
+
+    public static final String COMMIT_CHANGE_SET = "commitChangeSet";
+
+    public static final String CYCLE = "cycle";
+
+    public static final Map<String, Integer> DEFAULTS = defaults();
+
+    private static final String THRESHOLDS_RESOURCE = "/load-test-thresholds.yml";
+
+    // latencies and failures of repeated runs on the same machine exceed those of the recorded run almost twice
+    private static final String DEFAULT_TOLERANCE = "2";
+
+    private static final String PARAMETERS = "parameters";
+
+    private static final String OPERATIONS = "operations";
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    private final Map<String, Integer> parameters;
+
+    private final Latencies latencies = new Latencies();
+
+    public LoadTest(Map<String, Integer> parameters) {
+        this.parameters = new LinkedHashMap<>(DEFAULTS);
+        this.parameters.putAll(parameters);
+    }
+
+    private static Map<String, Integer> defaults() {
+        Map<String, Integer> defaults = new LinkedHashMap<>();
+        // generated repository
+        defaults.put("branches", 10);
+        defaults.put("boxes", 1000);
+        defaults.put("coreBoxes", 100);
+        defaults.put("dictionaries", 100);
+        defaults.put("dictionarySize", 16384);
+        defaults.put("history", 200);
+        // load
+        // writers are spread over the first activeBranches branches and over contexts,
+        // writers of the same branch in the same context wait for each other, in different contexts they race to push
+        defaults.put("writers", 8);
+        // first treeWriters writers update working tree and commit it, the others commit change sets
+        defaults.put("treeWriters", 4);
+        defaults.put("activeBranches", 4);
+        defaults.put("contexts", 8);
+        defaults.put("cycles", 20);
+        defaults.put("pushRetries", 3);
+        return Collections.unmodifiableMap(defaults);
+    }
+
+    private int parameter(String name) {
+        return parameters.get(name);
+    }
+
+    /**
+     * Generates the repository, runs the load and summarizes it
+     *
+     * @return report with parameters of the run and summary of each operation, see {@link Latencies#summary(long)}
+     */
+    public Map<String, Object> run() throws Exception {
+
+        SchemaGenerator generator = new SchemaGenerator(parameter("boxes"), parameter("coreBoxes"),
+                parameter("dictionaries"), parameter("dictionarySize"));
+        long start = System.nanoTime();
+        try (LocalRemote remote = LocalRemote.create(generator, parameter("branches"), parameter("history"))) {
+            logger.info("Generated repository with {} branches in {} ms",
+                    parameter("branches"), (System.nanoTime() - start) / 1_000_000);
+
+            List<GitterContext> contexts = new ArrayList<>();
+            for (int i = 0; i < parameter("contexts"); i++) {
+                contexts.add(remote.newContext(0, false, false, parameter("pushRetries")));
+            }
+            List<String> branches = remote.getBranches()
+                    .subList(0, Math.min(parameter("activeBranches"), parameter("branches")));
+
+            int writers = parameter("writers");
+            ExecutorService executor = Executors.newFixedThreadPool(writers);
+            CountDownLatch ready = new CountDownLatch(1);
+            try {
+                List<Future<?>> results = new ArrayList<>();
+                for (int i = 0; i < writers; i++) {
+                    Gitter gitter = contexts.get(i % contexts.size()).getGitter(branches.get(i % branches.size()));
+                    int writer = i;
+                    results.add(executor.submit(() -> {
+                        ready.await();
+                        work(writer, gitter, generator);
+                        return null;
+                    }));
+                }
+
+                start = System.nanoTime();
+                ready.countDown();
+                for (Future<?> result : results) {
+                    result.get();
+                }
+            } finally {
+                executor.shutdownNow();
+                for (GitterContext ctx : contexts) {
+                    ctx.close();
+                }
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put(PARAMETERS, parameters);
+        report.put(OPERATIONS, latencies.summary(System.nanoTime() - start));
+        return report;
+    }
+
+    private void work(int writer, Gitter gitter, SchemaGenerator generator) {
+
+        gitter.lock();
+        try {
+            measure(CLONE, gitter::checkout);
+        } finally {
+            gitter.unlock();
+        }
+
+        Random random = new Random(writer);
+        for (int cycle = 0; cycle < parameter("cycles"); cycle++) {
+            // versions above history length, unique to writer and cycle, so that every push changes the branch
+            int version = parameter("history") + 1 + writer * parameter("cycles") + cycle;
+            int index = random.nextInt(generator.getBoxes());
+            String message = String.format("writer %d cycle %d", writer, cycle);
+
+            measure(CYCLE, () -> {
+                gitter.lock();
+                try {
+                    // getSnapshot checks the branch out by itself
+                    measure(POLL, () -> Repository.getSnapshot(gitter));
+                    String name = SchemaGenerator.boxName(index);
+                    RepositoryResource box = YAML_MAPPER.readValue(generator.box(name, index, version),
+                            RepositoryResource.class);
+                    if (writer < parameter("treeWriters")) {
+                        measure(UPDATE, () -> {
+                            Repository.update(gitter, box);
+                            return null;
+                        });
+                        return measure(PUSH, () -> gitter.commitAndPush(message));
+                    }
+                    ChangeSet changes = new ChangeSet().put(box);
+                    return measure(COMMIT_CHANGE_SET, () -> changes.commitAndPush(gitter, message));
+                } finally {
+                    gitter.unlock();
+                }
+            });
+        }
+    }
+
+    private interface Operation<T> {
+        T call() throws Exception;
+    }
+
+    // failed operations are counted, logged and do not stop the writer
+    private <T> T measure(String operation, Operation<T> action) {
+        long start = System.nanoTime();
+        try {
+            T result = action.call();
+            latencies.record(operation, System.nanoTime() - start);
+            return result;
+        } catch (Exception e) {
+            latencies.fail(operation);
+            logger.warn("Operation \"{}\" failed", operation, e);
+            return null;
+        }
+    }
+
+    /**
+     * Compares the report with thresholds: latencies and failures must not exceed threshold values multiplied
+     * by tolerance and throughput must not fall below threshold throughput divided by tolerance
+     *
+     * @return descriptions of exceeded thresholds, empty if there are none
+     * or if thresholds were recorded with other parameters
+     */
+    @SuppressWarnings("unchecked")
+    public static List<String> findRegressions(Map<String, Object> report, Map<String, Object> thresholds,
+                                               double tolerance) {
+
+        List<String> regressions = new ArrayList<>();
+        if (!report.get(PARAMETERS).equals(thresholds.get(PARAMETERS))) {
+            logger.warn("Thresholds were recorded with parameters {}, not checking them",
+                    thresholds.get(PARAMETERS));
+            return regressions;
+        }
+
+        Map<String, Map<String, Number>> actual = (Map<String, Map<String, Number>>) report.get(OPERATIONS);
+        Map<String, Map<String, Number>> expected = (Map<String, Map<String, Number>>) thresholds.get(OPERATIONS);
+        expected.forEach((operation, limits) -> limits.forEach((stat, limit) -> {
+            Number value = actual.getOrDefault(operation, Map.of()).get(stat);
+            if (value == null || Latencies.COUNT.equals(stat)) {
+                return;
+            }
+            boolean regressed;
+            double allowed;
+            if (Latencies.THROUGHPUT.equals(stat)) {
+                allowed = limit.doubleValue() / tolerance;
+                regressed = value.doubleValue() < allowed;
+            } else {
+                allowed = limit.doubleValue() * tolerance;
+                regressed = value.doubleValue() > allowed;
+            }
+            if (regressed) {
+                regressions.add(String.format("%s %s is %s, allowed %.2f", operation, stat, value, allowed));
+            }
+        }));
+        return regressions;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static void main(String[] args) throws Exception {
+
+        Map<String, String> options = new LinkedHashMap<>();
+        Map<String, Integer> parameters = new LinkedHashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException(String.format("Argument \"%s\" is not a name=value pair", arg));
+            }
+            if (DEFAULTS.containsKey(pair[0])) {
+                parameters.put(pair[0], Integer.parseInt(pair[1]));
+            } else {
+                options.put(pair[0], pair[1]);
+            }
+        }
+
+        Map<String, Object> thresholds;
+        String thresholdsFile = options.get("thresholds");
+        if (thresholdsFile != null) {
+            thresholds = YAML_MAPPER.readValue(new File(thresholdsFile), Map.class);
+        } else {
+            try (InputStream in = LoadTest.class.getResourceAsStream(THRESHOLDS_RESOURCE)) {
+                if (in == null) {
+                    throw new IOException(String.format("Resource \"%s\" not found", THRESHOLDS_RESOURCE));
+                }
+                thresholds = YAML_MAPPER.readValue(in, Map.class);
+            }
+        }
+
+        LoadTest test = new LoadTest(parameters);
+        if (options.containsKey("tolerance") && !test.parameters.equals(thresholds.get(PARAMETERS))) {
+            throw new IllegalArgumentException(String.format("Tolerance is given, but thresholds were recorded "
+                    + "with parameters %s and would not be checked", thresholds.get(PARAMETERS)));
+        }
+
+        Map<String, Object> report = test.run();
+        File reportFile = new File(options.getOrDefault("report", "load-test.yml"));
+        if (reportFile.getAbsoluteFile().getParentFile().mkdirs()) {
+            logger.debug("Created directory for the report file {}", reportFile);
+        }
+        YAML_MAPPER.writeValue(reportFile, report);
+        logger.info("Load test report written to {}:\n{}", reportFile, YAML_MAPPER.writeValueAsString(report));
+
+        List<String> regressions = findRegressions(report, thresholds,
+                Double.parseDouble(options.getOrDefault("tolerance", DEFAULT_TOLERANCE)));
+        if (!regressions.isEmpty()) {
+            throw new IllegalStateException("Load test thresholds exceeded:\n" + String.join("\n", regressions));
+        }
+    }
+}
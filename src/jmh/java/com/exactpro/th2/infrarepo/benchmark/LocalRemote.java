@@ -0,0 +1,269 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.benchmark;
+
+import com.exactpro.th2.infrarepo.InconsistentRepositoryStateException;
+import com.exactpro.th2.infrarepo.ResourceType;
+import com.exactpro.th2.infrarepo.git.GitConfig;
+import com.exactpro.th2.infrarepo.git.Gitter;
+import com.exactpro.th2.infrarepo.git.GitterContext;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.util.FileUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bare repository on local file system filled with generated schemas, which serves as remote repository
+ * for benchmarks. Each {@link #newContext()} gets its own local repository root,
+ * so that contexts do not share local caches. Commits are pushed by a writer context of its own
+ * with {@link Gitter#commitAndPush(Map, Collection, String)}, the same way applications change branches
+ */
+public class LocalRemote implements Closeable {
+
+    public static final String MAIN_BRANCH = "master";
+
+    private final File root;
+
+    private final File remoteDir;
+
+    private final Repository remote;
+
+    private final List<String> branches = new ArrayList<>();
+
+    private final AtomicInteger contexts = new AtomicInteger();
+
+    // benchmarks push to the remote as well, so writer's view of the branch may be outdated and is retried once
+    private final GitterContext writer;
+
+    private LocalRemote(File root) throws IOException, GitAPIException {
+        this.root = root;
+        this.remoteDir = new File(root, "remote.git");
+        this.remote = Git.init().setBare(true).setGitDir(remoteDir).call().getRepository();
+        // garbage collection started in background after pushes would race deletion of the repository
+        StoredConfig config = remote.getConfig();
+        config.setBoolean("receive", null, "autogc", false);
+        config.save();
+        this.writer = newContext(new File(root, "writer").getAbsolutePath(), 0, false, false, 1);
+    }
+
+    /**
+     * Creates remote repository in a new temporary directory with the base schema in the main branch
+     * and schema variants in the other branches, each derived from the main one with a single commit
+     *
+     * @param generator generator of the schemas
+     * @param branches  total number of branches, including the main one
+     * @return remote repository, which must be closed to delete temporary directory
+     */
+    public static LocalRemote create(SchemaGenerator generator, int branches) throws IOException, GitAPIException {
+        return create(generator, branches, 0);
+    }
+
+    /**
+     * Same as {@link #create(SchemaGenerator, int)}, with the given number of commits in the history
+     * of the main branch before the other branches are derived from it. Each of these commits changes
+     * image version of one box
+     */
+    public static LocalRemote create(SchemaGenerator generator, int branches, int history)
+            throws IOException, GitAPIException {
+
+        LocalRemote remote = new LocalRemote(Files.createTempDirectory("infra-repo-").toFile());
+        try {
+            remote.seed(MAIN_BRANCH, generator.schema(0), "base schema");
+            for (int i = 1; i <= history && generator.getBoxes() > 0; i++) {
+                int index = i % generator.getBoxes();
+                String name = SchemaGenerator.boxName(index);
+                remote.commit(MAIN_BRANCH,
+                        Map.of(SchemaGenerator.path(ResourceType.Th2Box, name), generator.box(name, index, i)),
+                        List.of(), "history commit " + i);
+            }
+            ObjectId base = remote.remote.resolve(MAIN_BRANCH);
+            for (int i = 1; i < branches; i++) {
+                String branch = String.format("schema-%04d", i);
+                remote.createBranch(branch, base);
+                remote.commit(branch, generator.schema(i), List.of(), "schema variant " + i);
+            }
+            return remote;
+        } catch (IOException | GitAPIException | RuntimeException e) {
+            remote.close();
+            throw e;
+        }
+    }
+
+    // remote repository is empty, so the first commit is pushed from a new repository with working tree
+    private void seed(String branch, Map<String, byte[]> files, String message) throws IOException, GitAPIException {
+        File seedDir = new File(root, "seed");
+        try (Git git = Git.init().setDirectory(seedDir).setInitialBranch(branch).call()) {
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                File target = new File(seedDir, file.getKey());
+                FileUtils.mkdirs(target.getParentFile(), true);
+                Files.write(target.toPath(), file.getValue());
+            }
+            PersonIdent ident = new PersonIdent("generator", "generator@localhost");
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage(message).setAuthor(ident).setCommitter(ident).call();
+            git.push()
+                    .setRemote(getUri())
+                    .setRefSpecs(new RefSpec(Constants.HEAD + ":" + Constants.R_HEADS + branch))
+                    .call();
+        }
+        FileUtils.delete(seedDir, FileUtils.RECURSIVE);
+        branches.add(branch);
+    }
+
+    private void createBranch(String branch, ObjectId commitId) throws IOException {
+        RefUpdate update = remote.updateRef(Constants.R_HEADS + branch);
+        update.setNewObjectId(commitId);
+        if (update.update() != RefUpdate.Result.NEW) {
+            throw new IOException(String.format("Error creating branch \"%s\"", branch));
+        }
+        branches.add(branch);
+    }
+
+    /**
+     * Commits file changes to the existing branch of remote repository and pushes them from the writer context,
+     * as another application would
+     *
+     * @return commit ref of the new commit
+     */
+    public synchronized String commit(String branch, Map<String, byte[]> files, Collection<String> deletions,
+                                      String message) throws IOException {
+        Gitter gitter = writer.getGitter(branch);
+        gitter.lock();
+        try {
+            return gitter.commitAndPush(files, deletions, message);
+        } catch (GitAPIException | InconsistentRepositoryStateException e) {
+            throw new IOException(String.format("Error committing to branch \"%s\"", branch), e);
+        } finally {
+            gitter.unlock();
+        }
+    }
+
+    public String getUri() {
+        return remoteDir.getAbsolutePath();
+    }
+
+    public List<String> getBranches() {
+        return List.copyOf(branches);
+    }
+
+    /**
+     * Creates context for this remote repository with new local repository root
+     */
+    public GitterContext newContext() {
+        return newContext(0, false, false, 0);
+    }
+
+    /**
+     * Same as {@link #newContext()} with given caching, loading and push options
+     */
+    public GitterContext newContext(int snapshotCacheSize, boolean lazySpecLoading, boolean specInterning,
+                                    int pushRetries) {
+
+        String localRoot = new File(root, "local-" + contexts.incrementAndGet()).getAbsolutePath();
+        return newContext(localRoot, snapshotCacheSize, lazySpecLoading, specInterning, pushRetries);
+    }
+
+    private GitterContext newContext(String localRoot, int snapshotCacheSize, boolean lazySpecLoading,
+                                     boolean specInterning, int pushRetries) {
+
+        return GitterContext.getContext(new GitConfig() {
+            @Override
+            public String getRemoteRepository() {
+                return getUri();
+            }
+
+            @Override
+            public String getHttpAuthUsername() {
+                return null;
+            }
+
+            @Override
+            public String getHttpAuthPassword() {
+                return null;
+            }
+
+            @Override
+            public String getLocalRepositoryRoot() {
+                return localRoot;
+            }
+
+            @Override
+            public String getSshDir() {
+                return null;
+            }
+
+            @Override
+            public byte[] getPrivateKey() {
+                return null;
+            }
+
+            @Override
+            public int getSnapshotCacheSize() {
+                return snapshotCacheSize;
+            }
+
+            @Override
+            public boolean isLazySpecLoading() {
+                return lazySpecLoading;
+            }
+
+            @Override
+            public boolean isSpecInterning() {
+                return specInterning;
+            }
+
+            @Override
+            public int getPushRetries() {
+                return pushRetries;
+            }
+        });
+    }
+
+    /**
+     * Deletes local repository root of the context, so that next operations start from scratch
+     */
+    public static void deleteLocal(GitterContext ctx) throws IOException {
+        ctx.close();
+        File localRoot = new File(ctx.getLocalRepositoryRoot());
+        if (localRoot.exists()) {
+            FileUtils.delete(localRoot, FileUtils.RECURSIVE);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+        remote.close();
+        FileUtils.delete(root, FileUtils.RECURSIVE | FileUtils.RETRY);
+    }
+}
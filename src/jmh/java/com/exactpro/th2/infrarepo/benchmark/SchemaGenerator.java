@@ -0,0 +1,215 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.benchmark;
+
+import com.exactpro.th2.infrarepo.ResourceType;
+import com.exactpro.th2.infrarepo.repo.Repository;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.exactpro.th2.infrarepo.SchemaUtils.YAML_MAPPER;
+
+/**
+ * Generates th2 schemas of configurable size: settings file, core boxes, boxes and dictionaries
+ * referenced by the boxes. Output is deterministic, so the same parameters always produce the same files
+ */
+public class SchemaGenerator {
+
+    private static final String API_VERSION = "th2.exactpro.com/v2";
+
+    private static final String DICTIONARY_API_VERSION = "th2.exactpro.com/v1";
+
+    private final int boxes;
+
+    private final int coreBoxes;
+
+    private final int dictionaries;
+
+    private final int dictionarySize;
+
+    /**
+     * @param boxes          number of Th2Box resources
+     * @param dictionaries   number of Th2Dictionary resources, boxes reference them in turn
+     * @param dictionarySize approximate size of each dictionary in bytes
+     */
+    public SchemaGenerator(int boxes, int dictionaries, int dictionarySize) {
+        this(boxes, 0, dictionaries, dictionarySize);
+    }
+
+    /**
+     * @param coreBoxes number of Th2CoreBox resources in addition to the mandatory core components
+     */
+    public SchemaGenerator(int boxes, int coreBoxes, int dictionaries, int dictionarySize) {
+        this.boxes = boxes;
+        this.coreBoxes = coreBoxes;
+        this.dictionaries = dictionaries;
+        this.dictionarySize = dictionarySize;
+    }
+
+    public int getBoxes() {
+        return boxes;
+    }
+
+    /**
+     * Generates all files of the schema. Schemas of different variants differ in image version
+     * of one box and in one box that exists only in the given variant, like schema branches do
+     *
+     * @param variant 0 for the base schema, any other number for a schema derived from it
+     * @return Map, whose keys are file paths relative to repository root and values are file contents
+     */
+    public Map<String, byte[]> schema(int variant) throws IOException {
+
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put(Repository.SETTINGS_FILE_NAME + Repository.YML_ALIAS, settings());
+        files.put(path(ResourceType.Th2Mstore, "mstore"), coreBox(ResourceType.Th2Mstore, "mstore"));
+        files.put(path(ResourceType.Th2Estore, "estore"), coreBox(ResourceType.Th2Estore, "estore"));
+        files.put(path(ResourceType.Th2CoreBox, "rpt-data-provider"),
+                coreBox(ResourceType.Th2CoreBox, "rpt-data-provider"));
+        for (int i = 0; i < coreBoxes; i++) {
+            files.put(path(ResourceType.Th2CoreBox, coreBoxName(i)), coreBox(ResourceType.Th2CoreBox, coreBoxName(i)));
+        }
+        for (int i = 0; i < dictionaries; i++) {
+            files.put(path(ResourceType.Th2Dictionary, dictionaryName(i)), dictionary(dictionaryName(i), i));
+        }
+        for (int i = 0; i < boxes; i++) {
+            int version = boxes > 0 && variant % boxes == i ? variant : 0;
+            files.put(path(ResourceType.Th2Box, boxName(i)), box(boxName(i), i, version));
+        }
+        if (variant != 0) {
+            String name = "variant-" + variant;
+            files.put(path(ResourceType.Th2Box, name), box(name, variant, variant));
+        }
+        return files;
+    }
+
+    public static String boxName(int index) {
+        return String.format("box-%05d", index);
+    }
+
+    public static String coreBoxName(int index) {
+        return String.format("core-box-%05d", index);
+    }
+
+    public static String dictionaryName(int index) {
+        return String.format("dictionary-%04d", index);
+    }
+
+    public static String path(ResourceType type, String name) {
+        return type.path() + "/" + name + Repository.YML_ALIAS;
+    }
+
+    public byte[] settings() throws IOException {
+        return YAML_MAPPER.writeValueAsBytes(resource(
+                null,
+                ResourceType.SettingsFile.kind(),
+                Repository.SETTINGS_FILE_NAME,
+                map("k8s-propagation", "rule")));
+    }
+
+    /**
+     * @param version image version of the box, changing it changes contents of the file
+     */
+    public byte[] box(String name, int index, int version) throws IOException {
+
+        Map<String, Object> spec = new LinkedHashMap<>();
+        spec.put("imageName", "ghcr.io/th2-net/th2-codec-sailfish");
+        spec.put("imageVersion", "5.2." + version);
+        spec.put("type", "th2-codec");
+        spec.put("customConfig", map(
+                "enabledExternalQueueRouting", false,
+                "enableVerticalScaling", true,
+                "codecSettings", map(
+                        "dictionary", dictionaries == 0 ? "" : dictionaryName(index % dictionaries),
+                        "messageTypes", List.of("Logon", "Logout", "Heartbeat", "NewOrderSingle", "ExecutionReport"))));
+        spec.put("pins", map(
+                "mq", map(
+                        "subscribers", List.of(
+                                pin("in_codec_encode", "encoder_in", "parsed", "subscribe"),
+                                pin("in_codec_decode", "decoder_in", "raw", "subscribe")),
+                        "publishers", List.of(
+                                pin("out_codec_encode", "encoder_out", "raw", "publish"),
+                                pin("out_codec_decode", "decoder_out", "parsed", "publish"))),
+                "grpc", map("server", List.of(map(
+                        "name", "server",
+                        "serviceClasses", List.of("com.exactpro.th2.codec.grpc.CodecService"))))));
+        spec.put("extendedSettings", map(
+                "service", map("enabled", false),
+                "resources", map(
+                        "limits", map("memory", "300Mi", "cpu", "200m"),
+                        "requests", map("memory", "100Mi", "cpu", "50m"))));
+
+        return YAML_MAPPER.writeValueAsBytes(resource(API_VERSION, ResourceType.Th2Box.kind(), name, spec));
+    }
+
+    public byte[] coreBox(ResourceType type, String name) throws IOException {
+        Map<String, Object> spec = new LinkedHashMap<>();
+        spec.put("imageName", "ghcr.io/th2-net/th2-" + name);
+        spec.put("imageVersion", "5.1.0");
+        spec.put("extendedSettings", map(
+                "service", map("enabled", true, "type", "ClusterIP"),
+                "resources", map("limits", map("memory", "1000Mi", "cpu", "1000m"))));
+        return YAML_MAPPER.writeValueAsBytes(resource(API_VERSION, type.kind(), name, spec));
+    }
+
+    /**
+     * Dictionaries hold message definitions as a single string, which makes them the largest files of the schema
+     */
+    public byte[] dictionary(String name, int index) throws IOException {
+
+        Random random = new Random(index);
+        StringBuilder data = new StringBuilder(dictionarySize + 128);
+        data.append("<dictionary name=\"").append(name).append("\">\n");
+        for (int field = 0; data.length() < dictionarySize; field++) {
+            data.append("  <field name=\"Field").append(field)
+                    .append("\" id=\"").append(random.nextInt(100_000))
+                    .append("\" type=\"").append(random.nextBoolean() ? "STRING" : "INTEGER")
+                    .append("\"/>\n");
+        }
+        data.append("</dictionary>\n");
+
+        return YAML_MAPPER.writeValueAsBytes(resource(DICTIONARY_API_VERSION, ResourceType.Th2Dictionary.kind(), name,
+                map("data", data.toString())));
+    }
+
+    // keeps keys in insertion order, so that generated files do not depend on hash ordering
+    private static Map<String, Object> map(Object... entries) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            map.put((String) entries[i], entries[i + 1]);
+        }
+        return map;
+    }
+
+    private static Map<String, Object> pin(String name, String alias, String format, String direction) {
+        return map("name", name, "attributes", List.of(direction, format, alias));
+    }
+
+    private static Map<String, Object> resource(String apiVersion, String kind, String name, Object spec) {
+        Map<String, Object> resource = new LinkedHashMap<>();
+        if (apiVersion != null) {
+            resource.put("apiVersion", apiVersion);
+        }
+        resource.put("kind", kind);
+        resource.put("metadata", map("name", name));
+        resource.put("spec", spec);
+        return resource;
+    }
+}
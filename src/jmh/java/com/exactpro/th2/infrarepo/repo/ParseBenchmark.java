@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.repo;
+
+import com.exactpro.th2.infrarepo.benchmark.SchemaGenerator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.exactpro.th2.infrarepo.SchemaUtils.YAML_MAPPER;
+
+/**
+ * Digesting and parsing of single resource files, without file system and git access.
+ * Located in the package of {@link SourceHash}, which is not public
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    private static final ObjectReader READER = YAML_MAPPER.readerFor(RepositoryResource.class);
+
+    @Param({"4096", "262144"})
+    public int dictionarySize;
+
+    private byte[] box;
+
+    private byte[] dictionary;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SchemaGenerator generator = new SchemaGenerator(1, 1, dictionarySize);
+        box = generator.box(SchemaGenerator.boxName(0), 0, 0);
+        dictionary = generator.dictionary(SchemaGenerator.dictionaryName(0), 0);
+    }
+
+    @Benchmark
+    public String digestBox() {
+        return SourceHash.of(box);
+    }
+
+    @Benchmark
+    public String digestDictionary() {
+        return SourceHash.of(dictionary);
+    }
+
+    @Benchmark
+    public RepositoryResource parseBox() throws IOException {
+        return READER.readValue(box);
+    }
+
+    @Benchmark
+    public RepositoryResource parseDictionary() throws IOException {
+        return READER.readValue(dictionary);
+    }
+}
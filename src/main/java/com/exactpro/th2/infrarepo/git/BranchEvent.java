@@ -0,0 +1,99 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.git;
+
+import com.exactpro.th2.infrarepo.repo.RepositorySnapshot;
+import com.exactpro.th2.infrarepo.repo.SnapshotDiff;
+
+/**
+ * Change of the remote branch detected by {@link BranchWatcher}
+ */
+public class BranchEvent {
+
+    public enum Type {
+        CREATED,
+        DELETED,
+        /**
+         * Branch moved to another commit, which is not necessarily a descendant of the previous one
+         */
+        ADVANCED
+    }
+
+    private final Type type;
+
+    private final String branch;
+
+    private final String oldCommitRef;
+
+    private final String newCommitRef;
+
+    private final RepositorySnapshot snapshot;
+
+    private final SnapshotDiff diff;
+
+    BranchEvent(String branch, String oldCommitRef, String newCommitRef, RepositorySnapshot snapshot,
+                SnapshotDiff diff) {
+        this.type = oldCommitRef == null ? Type.CREATED : newCommitRef == null ? Type.DELETED : Type.ADVANCED;
+        this.branch = branch;
+        this.oldCommitRef = oldCommitRef;
+        this.newCommitRef = newCommitRef;
+        this.snapshot = snapshot;
+        this.diff = diff;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    /**
+     * @return commit ref of the branch before the change, null if branch was created
+     */
+    public String getOldCommitRef() {
+        return oldCommitRef;
+    }
+
+    /**
+     * @return commit ref of the branch after the change, null if branch was deleted
+     */
+    public String getNewCommitRef() {
+        return newCommitRef;
+    }
+
+    /**
+     * @return snapshot of the branch at the new commit, null if snapshot delta is disabled or branch was deleted
+     */
+    public RepositorySnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return changes of the resources between old and new commits, null if snapshot delta is disabled
+     * or snapshot of the old commit is not available
+     */
+    public SnapshotDiff getDiff() {
+        return diff;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s: %s -> %s", type, branch, oldCommitRef, newCommitRef);
+    }
+}
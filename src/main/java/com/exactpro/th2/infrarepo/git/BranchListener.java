@@ -0,0 +1,27 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.git;
+
+/**
+ * Receives changes of the remote branches detected by {@link BranchWatcher}.
+ * Events are delivered on the watcher's thread, one at a time
+ */
+@FunctionalInterface
+public interface BranchListener {
+
+    void onBranchEvent(BranchEvent event);
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.git;
+
+import java.util.Objects;
+
+/**
+ * Describes how the branch moved during a fetch from remote repository
+ */
+public class BranchUpdate {
+
+    private final String branch;
+
+    private final String oldCommitRef;
+
+    private final String newCommitRef;
+
+    public BranchUpdate(String branch, String oldCommitRef, String newCommitRef) {
+        this.branch = branch;
+        this.oldCommitRef = oldCommitRef;
+        this.newCommitRef = newCommitRef;
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    /**
+     * @return commit ref of the branch before fetch, null if branch was not fetched before
+     */
+    public String getOldCommitRef() {
+        return oldCommitRef;
+    }
+
+    /**
+     * @return commit ref of the branch after fetch, null if branch was deleted from remote repository
+     */
+    public String getNewCommitRef() {
+        return newCommitRef;
+    }
+
+    public boolean isChanged() {
+        return !Objects.equals(oldCommitRef, newCommitRef);
+    }
+
+    public boolean isCreated() {
+        return oldCommitRef == null && newCommitRef != null;
+    }
+
+    public boolean isDeleted() {
+        return oldCommitRef != null && newCommitRef == null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s -> %s", branch, oldCommitRef, newCommitRef);
+    }
+}
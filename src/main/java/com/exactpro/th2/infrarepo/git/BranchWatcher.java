@@ -0,0 +1,306 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.git;
+
+import com.exactpro.th2.infrarepo.repo.Repository;
+import com.exactpro.th2.infrarepo.repo.RepositorySnapshot;
+import com.exactpro.th2.infrarepo.repo.SnapshotDiff;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls branches of the remote repository and notifies listeners about created, deleted and advanced branches.
+ * There is one watcher per context, so all consumers of the same remote repository share a single poller.
+ * <p>
+ * Polling interval adapts to the activity: it is reset to the minimum when branches change and doubles with
+ * every idle poll or failure, up to the maximum. Changes arriving in bursts are coalesced: events are emitted
+ * once branches stay unchanged for one minimum interval, but not later than one maximum interval after
+ * the burst started. Each event describes the net change of the branch since the previous event.
+ * <p>
+ * First poll only records current state of the branches and emits no events.
+ *
+ * <pre>
+ * {@code
+ * BranchWatcher watcher = ctx.getWatcher();
+ * watcher.addListener(event -> {
+ *     // handle event
+ * });
+ * watcher.start();
+ * }
+ * </pre>
+ */
+public class BranchWatcher {
+
+    public static final Duration DEFAULT_MIN_INTERVAL = Duration.ofSeconds(5);
+
+    public static final Duration DEFAULT_MAX_INTERVAL = Duration.ofMinutes(1);
+
+    private final Logger logger = LoggerFactory.getLogger(BranchWatcher.class);
+
+    private final GitterContext ctx;
+
+    private final List<BranchListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile long minInterval = DEFAULT_MIN_INTERVAL.toMillis();
+
+    private volatile long maxInterval = DEFAULT_MAX_INTERVAL.toMillis();
+
+    private volatile boolean snapshotDelta;
+
+    // guarded by this
+    private ScheduledExecutorService scheduler;
+
+    // fields below are only accessed by the polling thread
+
+    private volatile Map<String, String> emitted;
+
+    private Map<String, String> polled;
+
+    private long burstStart = -1;
+
+    private long interval;
+
+    private int failures;
+
+    private final Map<String, RepositorySnapshot> snapshots = new HashMap<>();
+
+    BranchWatcher(GitterContext ctx) {
+        this.ctx = ctx;
+    }
+
+    public void addListener(BranchListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(BranchListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Sets bounds of the polling interval. Takes effect from the next poll
+     *
+     * @param min interval used while branches are changing, also the time branches have to stay unchanged
+     *            before coalesced events are emitted
+     * @param max interval reached when branches are idle, also the longest time events can be delayed
+     *            by coalescing
+     */
+    public void setIntervals(Duration min, Duration max) {
+        if (min.isNegative() || min.isZero() || max.compareTo(min) < 0) {
+            throw new IllegalArgumentException(String.format("Invalid polling intervals: %s, %s", min, max));
+        }
+        this.minInterval = min.toMillis();
+        this.maxInterval = max.toMillis();
+    }
+
+    /**
+     * Enables delivering snapshots of changed branches along with the events. Changed branches are
+     * downloaded into the shared object store in one fetch and their snapshots are compared with
+     * snapshots delivered by previous events, so listeners do not have to load them on their own.
+     * Branches of the store are not moved by the watcher, {@link GitterContext#fetchBranches} still reports them
+     *
+     * @param snapshotDelta whether events should carry snapshot and snapshot diff
+     */
+    public void setSnapshotDelta(boolean snapshotDelta) {
+        this.snapshotDelta = snapshotDelta;
+    }
+
+    /**
+     * Starts polling on a dedicated daemon thread, does nothing if watcher is already running
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "branch-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        interval = minInterval;
+        schedule(0);
+    }
+
+    /**
+     * Stops polling. State of the branches is kept, so after restart events describe
+     * changes since the last event emitted before stop
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return scheduler != null;
+    }
+
+    /**
+     * Returns commit refs of the branches as of the last emitted events
+     *
+     * @return Map, whose keys are branch names and values are commit refs, empty if no poll completed yet
+     */
+    public Map<String, String> getBranchCommits() {
+        Map<String, String> commits = emitted;
+        return commits == null ? Map.of() : commits;
+    }
+
+    private synchronized void schedule(long delay) {
+        if (scheduler != null) {
+            scheduler.schedule(this::run, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void run() {
+        long delay;
+        try {
+            delay = poll();
+            failures = 0;
+        } catch (Exception e) {
+            failures++;
+            delay = Math.min(minInterval << Math.min(failures, 20), maxInterval);
+            logger.warn("error polling remote repository, retrying in {} ms", delay, e);
+        }
+        schedule(delay);
+    }
+
+    /**
+     * @return delay before the next poll
+     */
+    private long poll() throws Exception {
+
+        Map<String, String> current = Collections.unmodifiableMap(ctx.getAllBranchesCommits());
+        long now = System.nanoTime();
+
+        if (emitted == null) {
+            emitted = current;
+            polled = current;
+            return interval = minInterval;
+        }
+
+        if (!current.equals(polled)) {
+            polled = current;
+            if (burstStart < 0) {
+                burstStart = now;
+            }
+            if (TimeUnit.NANOSECONDS.toMillis(now - burstStart) < maxInterval) {
+                // wait for branches to settle
+                return interval = minInterval;
+            }
+        }
+        burstStart = -1;
+
+        if (!current.equals(emitted)) {
+            Map<String, String> previous = emitted;
+            emitted = current;
+            emit(previous, current);
+            return interval = minInterval;
+        }
+
+        return interval = Math.min(interval * 2, maxInterval);
+    }
+
+    private void emit(Map<String, String> previous, Map<String, String> current) {
+
+        Set<String> branches = new TreeSet<>(previous.keySet());
+        branches.addAll(current.keySet());
+        List<String> changed = new ArrayList<>();
+        for (String branch : branches) {
+            if (!Objects.equals(previous.get(branch), current.get(branch))) {
+                changed.add(branch);
+            }
+        }
+
+        boolean fetched = false;
+        if (snapshotDelta) {
+            List<String> existing = new ArrayList<>();
+            List<String> deleted = new ArrayList<>();
+            changed.forEach(branch -> (current.containsKey(branch) ? existing : deleted).add(branch));
+            try {
+                ctx.fetchWatched(existing, deleted);
+                fetched = true;
+            } catch (Exception e) {
+                logger.error("error fetching changed branches {}, events will be emitted without snapshots",
+                        existing, e);
+            }
+        }
+
+        for (String branch : changed) {
+            BranchEvent event = fetched
+                    ? eventWithSnapshot(branch, previous.get(branch), current.get(branch))
+                    : new BranchEvent(branch, previous.get(branch), current.get(branch), null, null);
+            logger.info("branch changed: {}", event);
+            for (BranchListener listener : listeners) {
+                try {
+                    listener.onBranchEvent(event);
+                } catch (RuntimeException e) {
+                    logger.error("listener failed to handle event \"{}\"", event, e);
+                }
+            }
+        }
+    }
+
+    private BranchEvent eventWithSnapshot(String branch, String oldCommitRef, String newCommitRef) {
+
+        RepositorySnapshot previous = snapshots.remove(branch);
+        if (newCommitRef == null) {
+            SnapshotDiff diff = previous == null ? null : SnapshotDiff.between(previous,
+                    new RepositorySnapshot(null, Set.of()));
+            return new BranchEvent(branch, oldCommitRef, null, null, diff);
+        }
+
+        // snapshots are read from the shared object store the commits were just fetched to,
+        // so local caches of the branches are neither created nor raced with checkouts and pushes in progress
+        try {
+            if (previous == null && oldCommitRef != null) {
+                previous = readPrevious(branch, oldCommitRef);
+            }
+            RepositorySnapshot snapshot = Repository.readStoredSnapshot(ctx, branch, newCommitRef);
+            snapshots.put(branch, snapshot);
+
+            SnapshotDiff diff = previous != null || oldCommitRef == null ? snapshot.diff(previous) : null;
+            return new BranchEvent(branch, oldCommitRef, newCommitRef, snapshot, diff);
+        } catch (Exception e) {
+            logger.error("error reading snapshot of branch \"{}\" at {}", branch, newCommitRef, e);
+            return new BranchEvent(branch, oldCommitRef, newCommitRef, null, null);
+        }
+    }
+
+    // old commit is only available if it was fetched before
+    private RepositorySnapshot readPrevious(String branch, String commitRef) {
+        try {
+            return Repository.readStoredSnapshot(ctx, branch, commitRef);
+        } catch (Exception e) {
+            logger.debug("previous commit {} of branch \"{}\" is not available", commitRef, branch);
+            return null;
+        }
+    }
+}
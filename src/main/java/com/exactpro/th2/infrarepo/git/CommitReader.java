@@ -0,0 +1,60 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.git;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Reads files of commits straight from an object database, without working tree
+ */
+public interface CommitReader {
+
+    /**
+     * Resolves revision to the commit ref
+     *
+     * @param revision commit ref, branch, tag or any other revision string understood by git
+     * @return commit ref the revision points to
+     * @throws IOException              If repository IO operation fails
+     * @throws IllegalArgumentException If revision can not be resolved
+     */
+    String resolve(String revision) throws IOException;
+
+    /**
+     * Lists files located directly in given directories of the commit's tree.
+     * Root directory of the repository is denoted with empty string
+     *
+     * @param revision    commit ref, branch or tag which tree will be listed
+     * @param directories paths of the directories relative to repository root
+     * @return Map, whose keys are file paths relative to repository root and values are blob ids of the files
+     * @throws IOException              If repository IO operation fails
+     * @throws IllegalArgumentException If revision can not be resolved
+     */
+    Map<String, ObjectId> listFiles(String revision, Collection<String> directories) throws IOException;
+
+    /**
+     * Reads contents of the file
+     *
+     * @param blobId blob id of the file, as returned by {@link #listFiles(String, Collection)}
+     * @return contents of the file
+     * @throws IOException If blob is missing or repository IO operation fails
+     */
+    byte[] readBlob(ObjectId blobId) throws IOException;
+}
@@ -16,6 +16,8 @@
 
 package com.exactpro.th2.infrarepo.git;
 
+import com.exactpro.th2.infrarepo.metrics.RepositoryMetrics;
+
 public interface GitConfig {
     String getRemoteRepository();
 
@@ -28,4 +30,120 @@ public interface GitConfig {
     String getSshDir();
 
     byte[] getPrivateKey();
+
+    /**
+     * Maximum number of repository snapshots cached per context, 0 disables caching
+     *
+     * @return snapshot cache capacity
+     */
+    default int getSnapshotCacheSize() {
+        return 0;
+    }
+
+    /**
+     * Maximum number of parsed resource files cached per context, 0 disables caching
+     *
+     * @return resource cache capacity
+     */
+    default int getResourceCacheSize() {
+        return 0;
+    }
+
+    /**
+     * Whether specs of resources loaded in bulk, such as snapshots, are kept as buffered tokens until
+     * {@link com.exactpro.th2.infrarepo.repo.RepositoryResource#getSpec()} is called for the first time.
+     * Reduces parse time and heap usage when only kind, metadata and source hash of most resources are used
+     *
+     * @return true if spec should be materialized lazily
+     */
+    default boolean isLazySpecLoading() {
+        return false;
+    }
+
+    /**
+     * Maximum number of times rejected push is retried after rebasing local changes onto the latest
+     * remote commit. Push is retried if it was rejected as non-fast-forward because remote branch moved,
+     * or with "failed to lock" status because remote branch was being updated by a concurrent push.
+     * Pushes rejected for other reasons are not retried. 0 disables retries and rejected push fails immediately
+     *
+     * @return number of push retries
+     */
+    default int getPushRetries() {
+        return 0;
+    }
+
+    /**
+     * Whether specs of resources loaded in bulk are deduplicated with interner shared by the context,
+     * so that equal strings and subtrees of different resources, branches and snapshots are stored once.
+     * Specs loaded this way are unmodifiable
+     *
+     * @return true if specs should be interned
+     */
+    default boolean isSpecInterning() {
+        return false;
+    }
+
+    /**
+     * Maximum number of bytes of pack files JGit keeps in its window cache, 0 keeps JGit default.
+     * Window cache is shared by all repositories of the JVM, so this setting applies JVM-wide
+     *
+     * @return packed git limit in bytes
+     */
+    default long getPackedGitLimit() {
+        return 0;
+    }
+
+    /**
+     * Maximum number of bytes JGit uses to cache delta bases while reading packed objects,
+     * 0 keeps JGit default. Applies JVM-wide, same as {@link #getPackedGitLimit()}
+     *
+     * @return delta base cache limit in bytes
+     */
+    default int getDeltaBaseCacheLimit() {
+        return 0;
+    }
+
+    /**
+     * Whether JGit should memory map pack files instead of reading them into heap.
+     * Applies JVM-wide, same as {@link #getPackedGitLimit()}
+     *
+     * @return true if pack files should be memory mapped
+     */
+    default boolean isPackedGitMMAP() {
+        return false;
+    }
+
+    /**
+     * Number of the latest commits downloaded for each branch, 0 downloads full history.
+     * Shallow history is enough for reading branches and committing on top of them, but rebasing
+     * rejected pushes fails if the remote branch moved further than the downloaded history reaches
+     *
+     * @return fetch depth
+     */
+    default int getCloneDepth() {
+        return 0;
+    }
+
+    /**
+     * Whether working trees of local caches contain only directories of repository resources
+     * and the settings file. Other files are still tracked and committed unchanged, but they are not
+     * written to disk, and files created outside of those paths are not committed
+     *
+     * @return true if working trees should be limited to resource paths
+     */
+    default boolean isSparseCheckout() {
+        return false;
+    }
+
+    /**
+     * Receiver of durations of git operations, lock waits and snapshot loading of the context,
+     * see {@link com.exactpro.th2.infrarepo.metrics.MicrometerRepositoryMetrics}.
+     * Called on every {@link GitterContext#getContext(GitConfig)}, but only the receiver returned when the context
+     * is created is used, so implementations should return the same instance instead of creating a new one
+     *
+     * @return metrics receiver, never null
+     */
+    default RepositoryMetrics getMetrics() {
+        return RepositoryMetrics.NOOP;
+    }
 }
@@ -17,43 +17,92 @@
 package com.exactpro.th2.infrarepo.git;
 
 import com.exactpro.th2.infrarepo.InconsistentRepositoryStateException;
+import com.exactpro.th2.infrarepo.ResourceType;
+import com.exactpro.th2.infrarepo.metrics.GitOperation;
+import com.exactpro.th2.infrarepo.metrics.RepositoryMetrics;
+import org.eclipse.jgit.api.CreateBranchCommand;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.RebaseCommand;
+import org.eclipse.jgit.api.RebaseResult;
 import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.StatusCommand;
 import org.eclipse.jgit.api.TransportConfigCallback;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.api.errors.NoHeadException;
-import org.eclipse.jgit.api.errors.WrongRepositoryStateException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.errors.EntryExistsException;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.merge.MergeStrategy;
+import org.eclipse.jgit.lib.RepositoryState;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.*;
 import org.eclipse.jgit.transport.sshd.SshdSessionFactory;
 import org.eclipse.jgit.transport.sshd.SshdSessionFactoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.eclipse.jgit.util.FS;
 import org.eclipse.jgit.util.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.*;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-public class Gitter {
+import static com.exactpro.th2.infrarepo.repo.Repository.SETTINGS_FILE_NAME;
+import static com.exactpro.th2.infrarepo.repo.Repository.YAML_ALIAS;
+import static com.exactpro.th2.infrarepo.repo.Repository.YML_ALIAS;
+
+public class Gitter implements CommitReader {
     public static final String REFS_HEADS = "refs/heads/";
 
+    public static final String REMOTE_NAME = "origin";
+
+    public static final String REFS_REMOTES = "refs/remotes/" + REMOTE_NAME + "/";
+
     public static final int TIME_OUT = 10;
 
+    private static final long PUSH_RETRY_DELAY_MS = 100;
+
+    // status reported by JGit receive-pack when the ref is locked by a concurrent update
+    private static final String LOCK_FAILURE_MESSAGE = "failed to lock";
+
+    // directories of repository resources and the settings file, the only paths written to sparse working trees
+    private static final List<String> SPARSE_PATHS = sparsePaths();
+
     Logger logger = LoggerFactory.getLogger(Gitter.class);
 
     private GitterContext ctx;
 
     private String branch;
 
-    private Lock lock;
+    private final ReentrantReadWriteLock lock;
+
+    // set by the thread holding exclusive lock, when the lock was acquired
+    private long lockedAt;
+
+    private final ThreadLocal<Long> readLockedAt = new ThreadLocal<>();
 
     private TransportConfigCallback callback;
 
@@ -61,13 +110,21 @@ public class Gitter {
 
     private final String repositoryDir;
 
+    private volatile boolean linked;
+
+    // set while repairCache is running, so checkout failing during repair is not repaired recursively
+    private volatile boolean repairing;
+
+    // guarded by this, holds one reference of its own, released by close()
+    private Repository repository;
+
     Gitter(GitterContext ctx, String branch) {
         this.ctx = ctx;
         this.branch = branch;
         this.localCacheRoot = ctx.getLocalRepositoryRoot() + "/" + branch;
         this.repositoryDir = localCacheRoot + "/.git";
         this.callback = Gitter.transportConfigCallback(ctx);
-        this.lock = new ReentrantLock();
+        this.lock = new ReentrantReadWriteLock();
     }
 
     /**
@@ -79,6 +136,15 @@ public class Gitter {
         return ctx;
     }
 
+    /**
+     * Return context to which this instance belongs
+     *
+     * @return Context of this instance
+     */
+    public GitterContext getContext() {
+        return ctx;
+    }
+
     /**
      * Return branch name for which this instance was constructed
      *
@@ -89,9 +155,10 @@ public class Gitter {
     }
 
     /**
-     * Acquires lock for this branch to prevent other threads to work on same the branch.
+     * Acquires exclusive lock for this branch to prevent other threads to work on same the branch.
      * Operations should be enclosed with try/finally block and lock should be released
-     * as soon as operations are done on this branch
+     * as soon as operations are done on this branch. Exclusive lock is required for operations
+     * modifying local cache or remote branch, such as checkout, reset and push
      *
      * <pre>
      * {@code
@@ -105,19 +172,137 @@ public class Gitter {
      * }
      * }
      * </pre>
+     *
+     * @throws IllegalStateException If current thread holds only read lock of the branch,
+     *                               upgrading it to exclusive lock would never succeed
      */
     public void lock() {
-        lock.lock();
+        checkNotReadLocked();
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        if (lock.getWriteHoldCount() == 1) {
+            lockedAt = System.nanoTime();
+            ctx.getMetrics().lockWaited(ctx.getMetricsRemote(), branch, true, lockedAt - start);
+        }
     }
 
     /**
-     * Releases lock on this branch
+     * Releases exclusive lock on this branch
      */
     public void unlock() {
-        lock.unlock();
+        long heldFor = lock.getWriteHoldCount() == 1 ? System.nanoTime() - lockedAt : -1;
+        lock.writeLock().unlock();
+        if (heldFor >= 0) {
+            ctx.getMetrics().lockHeld(ctx.getMetricsRemote(), branch, true, heldFor);
+        }
+    }
+
+    /**
+     * Acquires shared lock for this branch. Any number of threads can hold shared lock at the same time,
+     * while exclusive lock waits until all of them release it. Shared lock is enough for reading working tree
+     * of the local cache, e.g. with {@link com.exactpro.th2.infrarepo.repo.Repository#getResource}.
+     * Operations that need exclusive lock fail with {@link IllegalStateException} if the thread holds
+     * only shared lock, as shared lock can not be upgraded.
+     * Reading commits from the object database, e.g. with
+     * {@link com.exactpro.th2.infrarepo.repo.Repository#readCurrentSnapshot(Gitter)}, needs no lock at all
+     *
+     * <pre>
+     * {@code
+     * gitter.lockRead()
+     * try {
+     *     // read working tree
+     * } finally {
+     *     gitter.unlockRead();
+     * }
+     * }
+     * </pre>
+     */
+    public void lockRead() {
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        if (lock.getReadHoldCount() == 1) {
+            long now = System.nanoTime();
+            readLockedAt.set(now);
+            ctx.getMetrics().lockWaited(ctx.getMetricsRemote(), branch, false, now - start);
+        }
+    }
+
+    /**
+     * Releases shared lock on this branch
+     */
+    public void unlockRead() {
+        Long lockedAt = lock.getReadHoldCount() == 1 ? readLockedAt.get() : null;
+        lock.readLock().unlock();
+        if (lockedAt != null) {
+            readLockedAt.remove();
+            ctx.getMetrics().lockHeld(ctx.getMetricsRemote(), branch, false, System.nanoTime() - lockedAt);
+        }
+    }
+
+    /**
+     * Checks whether current thread holds exclusive or shared lock of this branch
+     *
+     * @return true if current thread holds any of the locks
+     */
+    public boolean isHeldByCurrentThread() {
+        return lock.isWriteLockedByCurrentThread() || lock.getReadHoldCount() > 0;
+    }
+
+    /**
+     * Fails fast instead of letting concurrent readers observe working tree in the middle of modification
+     */
+    private void checkNotReadLocked() {
+        if (lock.getReadHoldCount() > 0 && !lock.isWriteLockedByCurrentThread()) {
+            throw new IllegalStateException(String.format(
+                    "Branch \"%s\" is locked for reading, exclusive lock is required to modify it", branch));
+        }
+    }
+
+    /**
+     * Opens repository handle of the local cache in advance, so the following operations do not
+     * pay for reading repository configuration and pack indexes. Handle is kept open until {@link #close()}
+     *
+     * @throws IOException              If repository can not be opened
+     * @throws IllegalArgumentException If local cache of the branch does not exist
+     */
+    public void open() throws IOException {
+        checkAndGetLocalCacheRoot();
+        openRepository().close();
+    }
+
+    /**
+     * Releases repository handle of the local cache. Operations in progress keep using the handle
+     * and it is closed when the last of them completes. Next operation opens a new handle
+     */
+    public synchronized void close() {
+        if (repository != null) {
+            repository.close();
+            repository = null;
+        }
     }
 
-    private static TransportConfigCallback transportConfigCallback(GitConfig config) {
+    /**
+     * Closes repository handle and removes this instance from its context, so following
+     * {@link GitterContext#getGitter(String)} calls for the branch return a new instance
+     */
+    public void evict() {
+        ctx.evict(branch);
+        close();
+    }
+
+    /**
+     * Returns long-lived repository handle of the local cache with its use count incremented.
+     * Callers must close returned handle, which only decrements use count
+     */
+    private synchronized Repository openRepository() throws IOException {
+        if (repository == null) {
+            repository = new FileRepository(repositoryDir);
+        }
+        repository.incrementOpen();
+        return repository;
+    }
+
+    static TransportConfigCallback transportConfigCallback(GitConfig config) {
 
         return transport -> {
 
@@ -140,6 +325,9 @@ public class Gitter {
                 sshTransport.setTimeout(TIME_OUT);
                 sshTransport.setSshSessionFactory(sshSessionFactory);
 
+            } else if (isLocal(transport.getURI())) {
+                // repositories on local file system, e.g. generated for benchmarks, need no credentials
+
             } else {
                 throw new RuntimeException(
                         String.format("Unknown transport type (%s)", transport.getClass().getName()));
@@ -147,14 +335,27 @@ public class Gitter {
         };
     }
 
+    private static boolean isLocal(URIish uri) {
+        return "file".equals(uri.getScheme()) || uri.getScheme() == null && uri.getHost() == null;
+    }
+
     static Map<String, String> getAllBranchesCommits(GitterContext ctx) throws Exception {
 
         // retrieve all remote branches
-        Collection<Ref> allBranches = Git.lsRemoteRepository()
-                .setHeads(true)
-                .setRemote(ctx.getRemoteRepository())
-                .setTransportConfigCallback(Gitter.transportConfigCallback(ctx))
-                .call();
+        Collection<Ref> allBranches;
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            allBranches = Git.lsRemoteRepository()
+                    .setHeads(true)
+                    .setRemote(ctx.getRemoteRepository())
+                    .setTransportConfigCallback(Gitter.transportConfigCallback(ctx))
+                    .call();
+            success = true;
+        } finally {
+            ctx.getMetrics().operationCompleted(GitOperation.LS_REMOTE, ctx.getMetricsRemote(), null,
+                    System.nanoTime() - start, success);
+        }
 
         // filter, convert and normalize branch names
         Map<String, String> result = new HashMap<>();
@@ -171,7 +372,23 @@ public class Gitter {
         return commits.keySet();
     }
 
-    private String checkout(String branch, String targetDir) throws IOException, GitAPIException {
+    private String checkout(String branch, String targetDir, boolean fetchRemote) throws IOException, GitAPIException {
+
+        checkNotReadLocked();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            String commitRef = checkoutOrRepair(branch, targetDir, fetchRemote);
+            success = true;
+            return commitRef;
+        } finally {
+            ctx.getMetrics().operationCompleted(GitOperation.CHECKOUT, ctx.getMetricsRemote(), branch,
+                    System.nanoTime() - start, success);
+        }
+    }
+
+    private String checkoutOrRepair(String branch, String targetDir, boolean fetchRemote)
+            throws IOException, GitAPIException {
 
         // create branch directory if it does not exist
         File dir = new File(targetDir);
@@ -179,42 +396,314 @@ public class Gitter {
             throw new IOException(String.format("Error creating repository directory %s", targetDir));
         }
 
-        Repository repo = new FileRepository(repositoryDir);
-        Git git = new Git(repo);
+        ObjectId commit = fetch(branch, fetchRemote);
 
-        // try to pull branch
-        try {
-            git
-                    .pull()
-                    .setStrategy(MergeStrategy.THEIRS)
-                    .setTransportConfigCallback(callback)
-                    .call();
-        } catch (NoHeadException e) {
-            // probably there is no git repository in the directory
-            // try to clone
-            try (Git call = Git.cloneRepository()
-                    .setBranch(branch)
-                    .setURI(ctx.getRemoteRepository())
-                    .setDirectory(dir)
-                    .setTransportConfigCallback(callback)
-                    .call()) {
-                logger.info("local repository was not present, proceeding to clone");
+        try (Repository repo = openRepository();
+             Git git = new Git(repo)) {
+
+            // nothing changed on remote, working tree is already at the latest commit
+            // and has no leftovers of a write that failed before commit
+            Status workTree = resourceStatus(git);
+            if (isCheckedOut(repo, branch, commit) && workTree.isClean()) {
+                return commit.getName();
+            }
+            if (!workTree.isClean()) {
+                logger.info("discarding uncommitted changes of branch \"{}\": {}", branch,
+                        workTree.getUncommittedChanges());
+            }
+
+            resetToRemote(repo, git, branch);
+            // hard reset keeps untracked files, such as resources added by a failed write
+            for (String path : workTree.getUntracked()) {
+                deleteWithEmptyParents(new File(repo.getWorkTree(), path), repo.getWorkTree());
+            }
+            return commit.getName();
+        } catch (IOException | GitAPIException | JGitInternalException e) {
+            // createBranch checks out another branch into this cache, only own branch can be repaired
+            if (!branch.equals(this.branch) || repairing) {
+                throw e;
+            }
+            logger.warn("error checking out branch \"{}\", repairing local repository", branch, e);
+            repairCache();
+            try (Repository repo = openRepository()) {
+                return repo.resolve(Constants.HEAD).getName();
             }
-        } catch (WrongRepositoryStateException e) {
-            // try to recreate local repository
-            recreateCache();
         }
+    }
+
+    /**
+     * Checks out local branch, creating it if necessary, and hard resets it to the last downloaded remote commit
+     */
+    private void resetToRemote(Repository repo, Git git, String branch) throws IOException, GitAPIException {
 
-        Ref ref = git.checkout()
-                .setName(branch)
-                .setForced(true)
+        // local repository might have been created without checkout or contain
+        // leftovers of another branch, make sure the branch is checked out before resetting
+        if (!branch.equals(repo.getBranch())) {
+            if (repo.exactRef(REFS_HEADS + branch) == null) {
+                git.branchCreate()
+                        .setName(branch)
+                        .setStartPoint(REMOTE_NAME + "/" + branch)
+                        .setUpstreamMode(CreateBranchCommand.SetupUpstreamMode.TRACK)
+                        .call();
+            }
+            repo.updateRef(Constants.HEAD).link(REFS_HEADS + branch);
+        }
+
+        // remote repository is the source of truth, so instead of merging
+        // local branch and working tree are moved to the fetched commit
+        if (ctx.isSparseCheckout()) {
+            resetSparse(repo, repo.resolve(REFS_REMOTES + branch));
+            return;
+        }
+        git.reset()
+                .setMode(ResetCommand.ResetType.HARD)
+                .setRef(REFS_REMOTES + branch)
                 .call();
-        return ref.getObjectId().getName();
+    }
+
+    /**
+     * Equivalent of {@code git reset --hard} for sparse checkout. Index is filled with all files of the commit,
+     * but only files in {@link #SPARSE_PATHS} are written to the working tree. Files that are not changed
+     * since the previous checkout are not rewritten, tracked files outside of sparse paths are deleted
+     */
+    private static void resetSparse(Repository repo, ObjectId commitId) throws IOException {
+
+        File workTree = repo.getWorkTree();
+        DirCache index = repo.lockDirCache();
+        try (ObjectReader reader = repo.newObjectReader();
+             RevWalk revWalk = new RevWalk(reader);
+             TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.addTree(revWalk.parseCommit(commitId).getTree());
+            treeWalk.setRecursive(true);
+
+            Set<String> written = new HashSet<>();
+            DirCacheBuilder builder = index.builder();
+            while (treeWalk.next()) {
+                String path = treeWalk.getPathString();
+                FileMode mode = treeWalk.getFileMode(0);
+                DirCacheEntry entry = new DirCacheEntry(path);
+                entry.setFileMode(mode);
+                entry.setObjectId(treeWalk.getObjectId(0));
+                if (isSparsePath(path)
+                        && (FileMode.REGULAR_FILE.equals(mode) || FileMode.EXECUTABLE_FILE.equals(mode))) {
+                    writeSparse(repo, reader, index.getEntry(path), entry, new File(workTree, path));
+                    written.add(path);
+                }
+                builder.add(entry);
+            }
+
+            for (int i = 0; i < index.getEntryCount(); i++) {
+                String path = index.getEntry(i).getPathString();
+                if (!written.contains(path)) {
+                    deleteWithEmptyParents(new File(workTree, path), workTree);
+                }
+            }
+
+            if (!builder.commit()) {
+                throw new IOException(String.format("Error writing index of \"%s\"", workTree));
+            }
+        } finally {
+            index.unlock();
+        }
+
+        RefUpdate update = repo.updateRef(Constants.HEAD);
+        update.setNewObjectId(commitId);
+        RefUpdate.Result result = update.forceUpdate();
+        if (result == RefUpdate.Result.LOCK_FAILURE
+                || result == RefUpdate.Result.IO_FAILURE
+                || result == RefUpdate.Result.REJECTED) {
+            throw new IOException(String.format("Error updating HEAD of \"%s\": %s", workTree, result));
+        }
+    }
+
+    // same cleanup of interrupted merge, cherry-pick or revert as hard reset does
+    private static void clearState(Repository repo) throws IOException {
+        repo.writeMergeHeads(null);
+        repo.writeCherryPickHead(null);
+        repo.writeRevertHead(null);
+        repo.writeMergeCommitMsg(null);
+    }
+
+    private static void writeSparse(
+            Repository repo,
+            ObjectReader reader,
+            DirCacheEntry previous,
+            DirCacheEntry entry,
+            File file
+    ) throws IOException {
+
+        if (previous != null
+                && previous.getObjectId().equals(entry.getObjectId())
+                && previous.getRawMode() == entry.getRawMode()
+                && file.isFile()
+                && file.length() == previous.getLength()
+                && FS.DETECTED.lastModifiedInstant(file).equals(previous.getLastModifiedInstant())) {
+            entry.setLength(previous.getLength());
+            entry.setLastModified(previous.getLastModifiedInstant());
+            return;
+        }
+
+        FileUtils.mkdirs(file.getParentFile(), true);
+        try (OutputStream out = new FileOutputStream(file)) {
+            reader.open(entry.getObjectId(), Constants.OBJ_BLOB).copyTo(out);
+        }
+        FS.DETECTED.setExecute(file, FileMode.EXECUTABLE_FILE.equals(entry.getFileMode()));
+        entry.setLength(file.length());
+        entry.setLastModified(FS.DETECTED.lastModifiedInstant(file));
+    }
+
+    private static void deleteWithEmptyParents(File file, File workTree) throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+        FileUtils.delete(file);
+        for (File dir = file.getParentFile(); !dir.equals(workTree); dir = dir.getParentFile()) {
+            String[] children = dir.list();
+            if (children == null || children.length > 0) {
+                break;
+            }
+            FileUtils.delete(dir);
+        }
+    }
+
+    private static boolean isSparsePath(String path) {
+        for (String sparsePath : SPARSE_PATHS) {
+            if (path.equals(sparsePath) || path.startsWith(sparsePath + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> sparsePaths() {
+        List<String> paths = new ArrayList<>();
+        for (ResourceType type : ResourceType.values()) {
+            if (type.isRepositoryResource() && !type.path().isEmpty() && !paths.contains(type.path())) {
+                paths.add(type.path());
+            }
+        }
+        paths.add(SETTINGS_FILE_NAME + YML_ALIAS);
+        paths.add(SETTINGS_FILE_NAME + YAML_ALIAS);
+        return Collections.unmodifiableList(paths);
+    }
+
+    /**
+     * Status of the working tree, limited to sparse paths if sparse checkout is enabled,
+     * as files outside of them are missing from the working tree on purpose
+     */
+    private StatusCommand status(Git git) {
+        StatusCommand status = git.status();
+        if (ctx.isSparseCheckout()) {
+            SPARSE_PATHS.forEach(status::addPath);
+        }
+        return status;
+    }
+
+    /**
+     * Status of resource directories and the settings file, the only paths written by updates,
+     * so that leftovers of failed writes are found without scanning the whole working tree
+     */
+    private static Status resourceStatus(Git git) throws GitAPIException {
+        StatusCommand status = git.status();
+        SPARSE_PATHS.forEach(status::addPath);
+        return status.call();
+    }
+
+    private static boolean isCheckedOut(Repository repo, String branch, ObjectId commit) throws IOException {
+        if (!repo.getIndexFile().exists()
+                || repo.getRepositoryState() != RepositoryState.SAFE
+                || !branch.equals(repo.getBranch())) {
+            return false;
+        }
+        Ref head = repo.exactRef(Constants.HEAD);
+        return head != null && commit.equals(head.getObjectId());
+    }
+
+    /**
+     * Fetches the branch from remote repository into the shared object store, unless fetchRemote is false,
+     * and updates remote-tracking ref of the local cache, creating the cache if necessary.
+     * Working tree of the local cache is not modified
+     */
+    private ObjectId fetch(String branch, boolean fetchRemote) throws IOException, GitAPIException {
+
+        ObjectStore store = ctx.getObjectStore();
+        if (fetchRemote) {
+            store.fetch(List.of(branch), callback);
+        }
+        ObjectId commit = store.resolveId(REFS_HEADS + branch);
+        if (commit == null) {
+            throw new IllegalArgumentException(
+                    String.format("Branch \"%s\" was not fetched from remote repository", branch));
+        }
+
+        createCache();
+        store.copyShallow(new File(repositoryDir));
+        try (Repository repo = openRepository()) {
+            updateRemoteRef(repo, commit);
+        }
+        return commit;
+    }
+
+    private void updateRemoteRef(Repository repo, ObjectId commit) throws IOException {
+        RefUpdate update = repo.updateRef(REFS_REMOTES + branch);
+        update.setNewObjectId(commit);
+        RefUpdate.Result result = update.forceUpdate();
+        if (result == RefUpdate.Result.LOCK_FAILURE
+                || result == RefUpdate.Result.IO_FAILURE
+                || result == RefUpdate.Result.REJECTED) {
+            throw new IOException(String.format("Error updating ref \"%s\": %s", REFS_REMOTES + branch, result));
+        }
+    }
+
+    /**
+     * Pushed commit is known only to the local cache, so the branch is fetched back into the shared object store.
+     * Otherwise next checkout would reset the local cache to the commit preceding the push
+     */
+    private void pushed(Repository repo, ObjectId commit) throws IOException {
+        updateRemoteRef(repo, commit);
+        try {
+            fetch(branch, true);
+        } catch (GitAPIException | IOException e) {
+            // push succeeded, store catches up with the branch on next fetch
+            logger.warn("error fetching branch \"{}\" after push of commit {}", branch, commit.getName(), e);
+        }
+    }
+
+    /**
+     * Creates local cache on top of the shared object store if it does not exist
+     * and makes sure it is linked to the store
+     */
+    private synchronized void createCache() throws IOException, GitAPIException {
+
+        File gitDir = new File(repositoryDir);
+        if (!gitDir.exists()) {
+            // handle might still point to the deleted cache
+            close();
+            try (Git git = Git.init().setDirectory(new File(localCacheRoot)).call()) {
+                StoredConfig config = git.getRepository().getConfig();
+                config.setString("remote", REMOTE_NAME, "url", ctx.getRemoteRepository());
+                config.setString("remote", REMOTE_NAME, "fetch", "+" + REFS_HEADS + "*:" + REFS_REMOTES + "*");
+                config.save();
+                logger.info("local repository was not present, created it on top of shared object store");
+            }
+            linked = false;
+        }
+
+        // caches cloned before the store was introduced are linked on first use
+        if (!linked) {
+            if (ctx.getObjectStore().link(gitDir)) {
+                // alternates are read when repository is opened
+                close();
+            }
+            linked = true;
+        }
     }
 
     /**
      * Downloads to local cache latest version of the branch from remote repository and returns commit ref for
-     * the latest commit
+     * the latest commit. If local branch is already at the latest remote commit, returns without touching
+     * the working tree, otherwise local branch and working tree are hard reset to the latest remote commit,
+     * discarding local commits that were not pushed
      *
      * @return commit ref for latest commit
      * @throws IOException
@@ -222,7 +711,132 @@ public class Gitter {
      */
     public String checkout() throws IOException, GitAPIException {
 
-        return checkout(branch, localCacheRoot);
+        return checkout(branch, localCacheRoot, true);
+    }
+
+    /**
+     * Same as {@link #checkout()}, but if fetchRemote is false remote repository is not accessed and
+     * the version of the branch last downloaded into the shared object store is checked out instead.
+     * Can be used after {@link GitterContext#fetchBranches(Collection)} to refresh only changed branches
+     *
+     * @param fetchRemote whether latest version of the branch should be downloaded from remote repository
+     * @return commit ref for latest commit
+     * @throws IOException
+     * @throws GitAPIException
+     * @throws IllegalArgumentException if fetchRemote is false and the branch was never downloaded
+     */
+    public String checkout(boolean fetchRemote) throws IOException, GitAPIException {
+
+        return checkout(branch, localCacheRoot, fetchRemote);
+    }
+
+    /**
+     * Downloads to local cache latest version of the branch from remote repository without
+     * touching the working tree and returns commit ref for the latest commit.
+     * If local cache does not exist, it is created without checkout.
+     * Commits fetched this way can be read with {@link #listFiles(String, Collection)}
+     * and {@link #readBlob(ObjectId)}
+     *
+     * @return commit ref for latest commit of the remote branch
+     * @throws IOException
+     * @throws GitAPIException
+     */
+    public String fetch() throws IOException, GitAPIException {
+
+        return fetch(branch, true).getName();
+    }
+
+    /**
+     * Resolves revision to the commit ref using local cache of the repository
+     *
+     * @param revision commit ref, branch, tag or any other revision string understood by git
+     * @return commit ref the revision points to
+     * @throws IOException              If repository IO operation fails
+     * @throws IllegalArgumentException If revision can not be resolved
+     */
+    @Override
+    public String resolve(String revision) throws IOException {
+
+        openCache();
+        try (Repository repo = openRepository()) {
+            return resolve(repo, revision).getName();
+        }
+    }
+
+    private ObjectId resolve(Repository repo, String revision) throws IOException {
+        ObjectId id = repo.resolve(revision + "^{commit}");
+        if (id == null) {
+            // tags are only fetched into the shared object store
+            id = ctx.getObjectStore().resolveId(revision + "^{commit}");
+        }
+        if (id == null) {
+            throw new IllegalArgumentException(String.format("Revision \"%s\" not found", revision));
+        }
+        return id;
+    }
+
+    /**
+     * Lists files located directly in given directories of the commit's tree, without
+     * checking them out. Root directory of the repository is denoted with empty string
+     *
+     * @param revision    commit ref, branch or tag which tree will be listed
+     * @param directories paths of the directories relative to repository root
+     * @return Map, whose keys are file paths relative to repository root and values are blob ids of the files
+     * @throws IOException              If repository IO operation fails
+     * @throws IllegalArgumentException If revision can not be resolved
+     */
+    @Override
+    public Map<String, ObjectId> listFiles(String revision, Collection<String> directories) throws IOException {
+
+        openCache();
+        try (Repository repo = openRepository()) {
+            return listFiles(repo, resolve(repo, revision), directories);
+        }
+    }
+
+    static Map<String, ObjectId> listFiles(Repository repo, ObjectId commitId, Collection<String> directories)
+            throws IOException {
+
+        try (RevWalk revWalk = new RevWalk(repo);
+             TreeWalk treeWalk = new TreeWalk(repo)) {
+            treeWalk.addTree(revWalk.parseCommit(commitId).getTree());
+
+            Map<String, ObjectId> files = new LinkedHashMap<>();
+            while (treeWalk.next()) {
+                String path = treeWalk.getPathString();
+                if (treeWalk.isSubtree()) {
+                    if (directories.contains(path)) {
+                        treeWalk.enterSubtree();
+                    }
+                    continue;
+                }
+
+                int index = path.lastIndexOf("/");
+                String directory = index < 0 ? "" : path.substring(0, index);
+                int mode = treeWalk.getRawMode(0);
+                if ((FileMode.REGULAR_FILE.equals(mode) || FileMode.EXECUTABLE_FILE.equals(mode))
+                        && directories.contains(directory)) {
+                    files.put(path, treeWalk.getObjectId(0));
+                }
+            }
+            return files;
+        }
+    }
+
+    /**
+     * Reads contents of the file stored in local cache of the repository
+     *
+     * @param blobId blob id of the file
+     * @return file contents
+     * @throws IOException If blob does not exist or repository IO operation fails
+     */
+    @Override
+    public byte[] readBlob(ObjectId blobId) throws IOException {
+
+        openCache();
+        try (Repository repo = openRepository()) {
+            return repo.open(blobId, Constants.OBJ_BLOB).getBytes(Integer.MAX_VALUE);
+        }
     }
 
     /**
@@ -235,11 +849,16 @@ public class Gitter {
      */
     public String reset() throws InconsistentRepositoryStateException {
 
+        checkNotReadLocked();
         checkAndGetLocalCacheRoot();
 
-        try {
-            Repository repo = new FileRepository(repositoryDir);
-            Git git = new Git(repo);
+        try (Repository repo = openRepository();
+             Git git = new Git(repo)) {
+            if (ctx.isSparseCheckout()) {
+                ObjectId head = repo.resolve(Constants.HEAD);
+                resetSparse(repo, head);
+                return head.getName();
+            }
             Ref ref = git.reset().setMode(ResetCommand.ResetType.HARD).call();
             return ref.getObjectId().getName();
         } catch (Exception e) {
@@ -250,8 +869,129 @@ public class Gitter {
     }
 
     /**
-     * Recreates repository's local cache by deleting and re-downloading it from remote repository.
-     * Can be used to repair de-synchronized local and remote repositories due to push or merge conflicts.
+     * Brings local cache to the state of the last downloaded remote commit, trying the cheapest repairs first:
+     * aborting interrupted merge or rebase, hard reset, cleaning untracked files and downloading
+     * the branch again. Local cache is recreated with {@link #recreateCache()} only if none of them helped.
+     * Local commits that were not pushed are discarded. Repairs are counted by tier in
+     * {@link GitterContext#getRepairCounts()}
+     *
+     * @return the tier that made local cache consistent
+     * @throws IOException
+     * @throws GitAPIException
+     */
+    public RepairTier repairCache() throws IOException, GitAPIException {
+
+        checkNotReadLocked();
+        repairing = true;
+        try {
+            RepairTier result = repair();
+            if (result != RepairTier.NONE) {
+                logger.info("local repository of branch \"{}\" repaired with {}", branch, result);
+            }
+            ctx.recordRepair(branch, result);
+            return result;
+        } finally {
+            repairing = false;
+        }
+    }
+
+    private RepairTier repair() throws IOException, GitAPIException {
+
+        RepairTier result = RepairTier.RECLONE;
+        if (new File(repositoryDir).exists()) {
+            for (RepairTier tier : RepairTier.values()) {
+                if (tier == RepairTier.RECLONE) {
+                    break;
+                }
+                try {
+                    repair(tier);
+                    if (isConsistent()) {
+                        result = tier;
+                        break;
+                    }
+                } catch (Exception e) {
+                    logger.warn("repair step {} failed for branch \"{}\"", tier, branch, e);
+                }
+            }
+        }
+
+        if (result == RepairTier.RECLONE) {
+            if (new File(localCacheRoot).exists()) {
+                recreateCache();
+            } else {
+                checkout();
+            }
+        }
+        return result;
+    }
+
+    private void repair(RepairTier tier) throws IOException, GitAPIException {
+
+        if (tier == RepairTier.NONE) {
+            return;
+        }
+
+        try (Repository repo = openRepository();
+             Git git = new Git(repo)) {
+            switch (tier) {
+                case ABORT:
+                    File indexLock = new File(repo.getDirectory(), "index.lock");
+                    if (indexLock.exists()) {
+                        FileUtils.delete(indexLock);
+                    }
+                    if (repo.getRepositoryState().isRebasing()) {
+                        git.rebase().setOperation(RebaseCommand.Operation.ABORT).call();
+                    } else if (repo.getRepositoryState() != RepositoryState.SAFE) {
+                        if (ctx.isSparseCheckout()) {
+                            // plain hard reset would check out files outside of sparse paths
+                            resetSparse(repo, repo.resolve(REFS_REMOTES + branch));
+                            clearState(repo);
+                        } else {
+                            // hard reset also removes state of interrupted merge, cherry-pick or revert
+                            git.reset().setMode(ResetCommand.ResetType.HARD).call();
+                        }
+                    }
+                    break;
+                case RESET:
+                    resetToRemote(repo, git, branch);
+                    break;
+                case CLEAN:
+                    git.clean().setCleanDirectories(true).setForce(true).call();
+                    break;
+                case FETCH:
+                    fetch(branch, true);
+                    resetToRemote(repo, git, branch);
+                    git.clean().setCleanDirectories(true).setForce(true).call();
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("Unsupported repair tier %s", tier));
+            }
+        }
+    }
+
+    /**
+     * Local cache is consistent if the branch is checked out at the last downloaded remote commit
+     * and working tree has no changes
+     */
+    private boolean isConsistent() {
+        try (Repository repo = openRepository();
+             Git git = new Git(repo)) {
+            if (repo.getRepositoryState() != RepositoryState.SAFE || !branch.equals(repo.getBranch())) {
+                return false;
+            }
+            ObjectId head = repo.resolve(Constants.HEAD);
+            ObjectId remote = repo.resolve(REFS_REMOTES + branch);
+            return head != null && head.equals(remote) && status(git).call().isClean();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Recreates repository's local cache by deleting it and creating again on top of the shared object store,
+     * which is updated from remote repository.
+     * Can be used to repair de-synchronized local and remote repositories due to push or merge conflicts,
+     * although {@link #repairCache()} is usually much cheaper.
      *
      * @return commit ref of latest commit in repository
      * @throws IOException
@@ -259,7 +999,10 @@ public class Gitter {
      */
     public String recreateCache() throws IOException, GitAPIException {
 
+        checkNotReadLocked();
         File rootDir = checkAndGetLocalCacheRoot();
+        close();
+        ctx.getMetrics().cacheRecreated(ctx.getMetricsRemote(), branch);
         try {
             FileUtils.delete(rootDir, FileUtils.RECURSIVE);
             return checkout();
@@ -270,7 +1013,40 @@ public class Gitter {
     }
 
     /**
-     * Commits repository working tree and pushes changes to remote repository
+     * Lists files that differ between two commits of the local repository.
+     * Renames are reported as a deletion followed by an addition
+     *
+     * @param oldCommitRef commit ref to compare from
+     * @param newCommitRef commit ref to compare to
+     * @return list of added, modified and deleted files
+     * @throws IOException if either of the commit refs is not a commit id, the commit is not present
+     *                     in local repository or repository IO fails
+     */
+    public List<DiffEntry> diff(String oldCommitRef, String newCommitRef) throws IOException {
+
+        checkAndGetLocalCacheRoot();
+        try (Repository repo = openRepository();
+             RevWalk revWalk = new RevWalk(repo);
+             TreeWalk treeWalk = new TreeWalk(repo)) {
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            treeWalk.addTree(revWalk.parseCommit(commitId(oldCommitRef)).getTree());
+            treeWalk.addTree(revWalk.parseCommit(commitId(newCommitRef)).getTree());
+            return DiffEntry.scan(treeWalk);
+        }
+    }
+
+    private static ObjectId commitId(String commitRef) throws IOException {
+        if (commitRef == null || !ObjectId.isId(commitRef)) {
+            throw new IOException(String.format("\"%s\" is not a commit id", commitRef));
+        }
+        return ObjectId.fromString(commitRef);
+    }
+
+    /**
+     * Commits repository working tree and pushes changes to remote repository.
+     * If {@link GitConfig#getPushRetries()} is positive and push is rejected because remote branch moved,
+     * the commit is rebased onto the latest remote commit and pushed again
      *
      * @param message commit message string
      * @return null if working tree was clean and no commit happened
@@ -283,57 +1059,278 @@ public class Gitter {
     public String commitAndPush(String message)
             throws IOException, GitAPIException, InconsistentRepositoryStateException {
 
+        checkNotReadLocked();
         checkAndGetLocalCacheRoot();
-        Repository repo = new FileRepository(repositoryDir);
-        Git git = new Git(repo);
-        if (git.status().call().isClean()) {
-            return null;
+        try (Repository repo = openRepository();
+             Git git = new Git(repo)) {
+            Status workTree = status(git).call();
+            if (workTree.isClean()) {
+                return null;
+            }
+            if (ctx.isSparseCheckout()) {
+                return commitAndPushSparse(repo, workTree, message);
+            }
+
+            git.add()
+                    .setUpdate(true)
+                    .addFilepattern(".")
+                    .call();
+            git.add()
+                    .addFilepattern(".")
+                    .call();
+
+            try {
+                git.commit()
+                        .setMessage(message)
+                        .call();
+
+                String ref = Gitter.REFS_HEADS + branch;
+                RefSpec refSpec = new RefSpec(ref + ":" + ref);
+                for (int attempt = 0; ; attempt++) {
+                    RemoteRefUpdate update = push(git, refSpec);
+                    if (update.getStatus() == RemoteRefUpdate.Status.OK) {
+                        ObjectId commit = repo.resolve(ref);
+                        pushed(repo, commit);
+                        return commit.getName();
+                    }
+                    checkRetry(update, attempt);
+
+                    fetch(branch, true);
+                    RebaseResult result = git.rebase()
+                            .setUpstream(REFS_REMOTES + branch)
+                            .call();
+                    if (!result.getStatus().isSuccessful()) {
+                        // rebase refused to start on uncommitted changes leaves nothing to abort
+                        if (repo.getRepositoryState().isRebasing()) {
+                            git.rebase()
+                                    .setOperation(RebaseCommand.Operation.ABORT)
+                                    .call();
+                        }
+                        throw new InconsistentRepositoryStateException(
+                                String.format("Exception rebasing branch \"%s\" onto remote: %s"
+                                        , branch, result.getStatus().name()));
+                    }
+                }
+            } catch (InconsistentRepositoryStateException irse) {
+                throw irse;
+            } catch (Exception e) {
+                throw new InconsistentRepositoryStateException(
+                        String.format("Exception with commit and push for branch \"%s\"", branch), e);
+            }
         }
+    }
 
-        git.add()
-                .setUpdate(true)
-                .addFilepattern(".")
-                .call();
-        git.add()
-                .addFilepattern(".")
-                .call();
+    /**
+     * Sparse working tree misses files git would need for rebasing, so changes of the working tree are committed
+     * in the object database, where rejected pushes are retried by applying the changes to the latest remote commit.
+     * Local branch and index are moved to the pushed commit afterwards
+     */
+    private String commitAndPushSparse(Repository repo, Status workTree, String message)
+            throws IOException, GitAPIException, InconsistentRepositoryStateException {
 
-        try {
-            String commitRef = git.commit()
-                    .setMessage(message)
-                    .call()
-                    .getId()
-                    .getName();
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        for (Set<String> paths : List.of(workTree.getModified(), workTree.getChanged(),
+                workTree.getAdded(), workTree.getUntracked())) {
+            for (String path : paths) {
+                File file = new File(repo.getWorkTree(), path);
+                if (file.isFile()) {
+                    files.put(path, Files.readAllBytes(file.toPath()));
+                }
+            }
+        }
+        Set<String> deletions = new LinkedHashSet<>(workTree.getMissing());
+        deletions.addAll(workTree.getRemoved());
+
+        String commitRef = commitAndPush(files, deletions, message);
+        if (commitRef != null) {
+            resetSparse(repo, ObjectId.fromString(commitRef));
+        }
+        return commitRef;
+    }
 
-            String ref = Gitter.REFS_HEADS + branch;
+    /**
+     * Commits given file changes on top of the latest downloaded commit of the branch and pushes the commit
+     * to remote repository. Commit is built directly in the object database: working tree and index are
+     * neither scanned nor modified, so the cost depends on the size of the change rather than on the size
+     * of the repository. Local branch and working tree catch up with the pushed commit on next checkout.
+     * If {@link GitConfig#getPushRetries()} is positive and push is rejected because remote branch moved,
+     * the changes are applied again on top of the latest remote commit and pushed again
+     *
+     * @param files     contents of the files to create or overwrite, keyed by path relative to repository root
+     * @param deletions paths of the files to delete relative to repository root, missing files are ignored
+     * @param message   commit message string
+     * @return null if changes did not modify the branch and no commit happened
+     * or commit ref of the latest commit in the remote repository
+     * @throws InconsistentRepositoryStateException If push failed or was rejected. Neither local branch
+     *                                              nor working tree are modified in that case
+     * @throws IOException
+     * @throws GitAPIException
+     */
+    public String commitAndPush(Map<String, byte[]> files, Collection<String> deletions, String message)
+            throws IOException, GitAPIException, InconsistentRepositoryStateException {
 
-            for (PushResult pushResult : git
-                    .push()
-                    .add(ref)
+        checkNotReadLocked();
+        openCache();
+        ObjectId head;
+        try (Repository repo = openRepository()) {
+            head = repo.resolve(REFS_REMOTES + branch);
+        }
+        if (head == null) {
+            head = fetch(branch, true);
+        }
+
+        try (Repository repo = openRepository();
+             Git git = new Git(repo)) {
+            for (int attempt = 0; ; attempt++) {
+                ObjectId commitId = commit(repo, head, files, deletions, message);
+                if (commitId == null) {
+                    return null;
+                }
+
+                RemoteRefUpdate pushed = push(git, new RefSpec(commitId.getName() + ":" + REFS_HEADS + branch));
+                if (pushed.getStatus() == RemoteRefUpdate.Status.OK) {
+                    // remote branch is known to be at the pushed commit, so next change can be based on it
+                    pushed(repo, commitId);
+                    return commitId.getName();
+                }
+                checkRetry(pushed, attempt);
+                head = fetch(branch, true);
+            }
+        }
+    }
+
+    /**
+     * Creates commit with given file changes on top of the parent commit without touching working tree and index
+     *
+     * @return id of the commit or null if changes do not modify parent's tree
+     */
+    private static ObjectId commit(
+            Repository repo,
+            ObjectId parentId,
+            Map<String, byte[]> files,
+            Collection<String> deletions,
+            String message
+    ) throws IOException {
+
+        try (ObjectInserter inserter = repo.newObjectInserter();
+             ObjectReader reader = inserter.newReader();
+             RevWalk revWalk = new RevWalk(reader)) {
+            RevCommit parent = revWalk.parseCommit(parentId);
+
+            // in-core index holding only tree entries, no file of the working tree is read
+            DirCache index = DirCache.newInCore();
+            DirCacheBuilder builder = index.builder();
+            builder.addTree(new byte[0], DirCacheEntry.STAGE_0, reader, parent.getTree());
+            builder.finish();
+
+            DirCacheEditor editor = index.editor();
+            for (String path : deletions) {
+                editor.add(new DirCacheEditor.DeletePath(path));
+            }
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                ObjectId blobId = inserter.insert(Constants.OBJ_BLOB, file.getValue());
+                editor.add(new DirCacheEditor.PathEdit(file.getKey()) {
+                    @Override
+                    public void apply(DirCacheEntry entry) {
+                        entry.setFileMode(FileMode.REGULAR_FILE);
+                        entry.setObjectId(blobId);
+                    }
+                });
+            }
+            editor.finish();
+
+            ObjectId tree = index.writeTree(inserter);
+            if (tree.equals(parent.getTree())) {
+                return null;
+            }
+
+            PersonIdent ident = new PersonIdent(repo);
+            CommitBuilder commit = new CommitBuilder();
+            commit.setTreeId(tree);
+            commit.setParentId(parent);
+            commit.setAuthor(ident);
+            commit.setCommitter(ident);
+            commit.setMessage(message);
+            ObjectId commitId = inserter.insert(commit);
+            inserter.flush();
+            return commitId;
+        }
+    }
+
+    /**
+     * Push lost the race to another writer: either remote branch had already moved, or it was being updated
+     * at the same moment and remote repository failed to lock it. Other rejections, such as hooks declining
+     * the update, are not retried
+     */
+    private static boolean isRemoteChanged(RemoteRefUpdate update) {
+        switch (update.getStatus()) {
+            case REJECTED_NONFASTFORWARD:
+                return true;
+            case REJECTED_OTHER_REASON:
+                String message = update.getMessage();
+                return message != null && LOCK_FAILURE_MESSAGE.equals(message.trim().toLowerCase(Locale.ROOT));
+            default:
+                return false;
+        }
+    }
+
+    private RemoteRefUpdate push(Git git, RefSpec refSpec) throws InconsistentRepositoryStateException {
+
+        String ref = refSpec.getDestination();
+        TransferMonitor monitor = new TransferMonitor();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Iterable<PushResult> pushResults = git.push()
+                    .setRefSpecs(refSpec)
                     .setForce(false)
-                    .setTransportConfigCallback(transportConfigCallback(ctx))
-                    .call()) {
+                    .setTransportConfigCallback(callback)
+                    .setProgressMonitor(monitor)
+                    .call();
+
+            for (PushResult pushResult : pushResults) {
                 RemoteRefUpdate update = pushResult.getRemoteUpdate(ref);
                 if (update != null) {
-
-                    if (update.getStatus() == RemoteRefUpdate.Status.OK) {
-                        return commitRef;
-                    } else {
-                        throw new InconsistentRepositoryStateException(
-                                String.format("Exception pushing branch \"%s\" to remote: %s"
-                                        , branch, update.getStatus().name()));
-                    }
+                    success = update.getStatus() == RemoteRefUpdate.Status.OK;
+                    return update;
                 }
             }
+        } catch (GitAPIException e) {
+            throw new InconsistentRepositoryStateException(
+                    String.format("Exception pushing branch \"%s\" to remote", branch), e);
+        } finally {
+            RepositoryMetrics metrics = ctx.getMetrics();
+            metrics.operationCompleted(GitOperation.PUSH, ctx.getMetricsRemote(), branch,
+                    System.nanoTime() - start, success);
+            metrics.objectsTransferred(GitOperation.PUSH, ctx.getMetricsRemote(), branch, monitor.getObjects());
+        }
+
+        throw new InconsistentRepositoryStateException(
+                String.format("Cannot determine result of push command for branch \"%s\"", branch));
+    }
+
+    /**
+     * Throws if push can not be retried, otherwise waits before the retry.
+     * Delay grows exponentially with the attempt and is randomized, so that concurrent writers do not collide again
+     */
+    private void checkRetry(RemoteRefUpdate update, int attempt) throws InconsistentRepositoryStateException {
 
+        RemoteRefUpdate.Status status = update.getStatus();
+        if (!isRemoteChanged(update) || attempt >= ctx.getPushRetries()) {
             throw new InconsistentRepositoryStateException(
-                    String.format("Cannot determine result of push command for branch \"%s\"", branch));
+                    String.format("Exception pushing branch \"%s\" to remote: %s", branch, status.name()));
+        }
 
-        } catch (InconsistentRepositoryStateException irse) {
-            throw irse;
-        } catch (Exception e) {
+        long delay = PUSH_RETRY_DELAY_MS << Math.min(attempt, 10);
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        logger.info("push of branch \"{}\" was rejected, retrying in {} ms ({}/{})"
+                , branch, delay, attempt + 1, ctx.getPushRetries());
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new InconsistentRepositoryStateException(
-                    String.format("Exception with commit and push for branch \"%s\"", branch), e);
+                    String.format("Interrupted while retrying push of branch \"%s\"", branch), e);
         }
     }
 
@@ -356,23 +1353,25 @@ public class Gitter {
         }
 
         try {
-            checkout(sourceBranch, localCacheRoot);
+            checkout(sourceBranch, localCacheRoot, true);
 
-            Repository repo = new FileRepository(repositoryDir);
-            Git git = new Git(repo);
-            git.branchCreate()
-                    .setName(branch)
-                    .call();
-            Ref ref = git.checkout()
-                    .setName(branch)
-                    .call();
-            git.push()
-                    .add(ref)
-                    .setTransportConfigCallback(callback)
-                    .call();
+            try (Repository repo = openRepository();
+                 Git git = new Git(repo)) {
+                git.branchCreate()
+                        .setName(branch)
+                        .call();
+                Ref ref = git.checkout()
+                        .setName(branch)
+                        .call();
+                git.push()
+                        .add(ref)
+                        .setTransportConfigCallback(callback)
+                        .call();
 
-            return ref.getObjectId().getName();
+                return ref.getObjectId().getName();
+            }
         } catch (Exception e) {
+            close();
             try {
                 FileUtils.delete(new File(localCacheRoot), FileUtils.RECURSIVE);
             } catch (IOException ioe) {
@@ -383,6 +1382,14 @@ public class Gitter {
         }
     }
 
+    private void openCache() throws IOException {
+        try {
+            createCache();
+        } catch (GitAPIException e) {
+            throw new IOException(String.format("Error creating local repository cache for branch \"%s\"", branch), e);
+        }
+    }
+
     private File checkAndGetLocalCacheRoot() {
 
         File dir = new File(localCacheRoot);
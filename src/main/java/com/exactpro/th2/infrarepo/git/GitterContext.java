@@ -16,8 +16,20 @@
 
 package com.exactpro.th2.infrarepo.git;
 
+import com.exactpro.th2.infrarepo.metrics.RepositoryMetrics;
+import com.exactpro.th2.infrarepo.repo.ResourceCache;
+import com.exactpro.th2.infrarepo.repo.SnapshotCache;
+import com.exactpro.th2.infrarepo.repo.SpecInterner;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.eclipse.jgit.transport.URIish;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 public class GitterContext implements GitConfig {
     private final String remoteRepository;
@@ -32,16 +44,56 @@ public class GitterContext implements GitConfig {
 
     private final byte[] privateKey;
 
+    private final int snapshotCacheSize;
+
+    private final int resourceCacheSize;
+
+    private final int pushRetries;
+
+    private final boolean lazySpecLoading;
+
+    private final boolean specInterning;
+
+    private final long packedGitLimit;
+
+    private final int deltaBaseCacheLimit;
+
+    private final boolean packedGitMMAP;
+
+    private final int cloneDepth;
+
+    private final boolean sparseCheckout;
+
+    private final RepositoryMetrics metrics;
+
+    private final String metricsRemote;
+
     private volatile Map<String, Gitter> gitters;
 
+    private volatile SnapshotCache snapshotCache;
+
+    private volatile ResourceCache resourceCache;
+
+    private volatile ObjectStore objectStore;
+
+    private volatile SpecInterner specInterner;
+
+    private volatile BranchWatcher watcher;
+
+    private volatile Map<RepairTier, AtomicLong> repairCounts;
+
     private static volatile Map<GitterContext, GitterContext> contexts;
 
     /**
      * Returns context instance that can be used for further operations with repository
-     * specified in configuration parameter.
+     * specified in configuration parameter. Contexts are shared by configs with the same
+     * local repository root, remote repository and credentials. Such configs must agree on all other
+     * options, as contexts working on the same local caches with different options would corrupt them.
+     * Only {@link GitConfig#getMetrics()} may differ, the metrics of the config that created the context are used
      *
      * @param config Configuration object describing remote repository and its credentials
      * @return Context to use for repository operations
+     * @throws IllegalArgumentException If context for the same repository was created with other options
      */
     public static GitterContext getContext(GitConfig config) {
 
@@ -54,10 +106,48 @@ public class GitterContext implements GitConfig {
         }
 
         GitterContext key = new GitterContext(config);
-        return contexts.computeIfAbsent(key, k -> {
+        GitterContext context = contexts.computeIfAbsent(key, k -> {
             key.gitters = new ConcurrentHashMap<>();
+            key.snapshotCache = new SnapshotCache(key.snapshotCacheSize);
+            key.resourceCache = new ResourceCache(key.resourceCacheSize);
+            key.objectStore = new ObjectStore(key);
+            key.specInterner = new SpecInterner();
+            key.watcher = new BranchWatcher(key);
+            key.repairCounts = new EnumMap<>(RepairTier.class);
+            for (RepairTier tier : RepairTier.values()) {
+                key.repairCounts.put(tier, new AtomicLong());
+            }
+            key.installWindowCache();
             return key;
         });
+
+        List<String> conflicts = context.conflictingOptions(key);
+        if (!conflicts.isEmpty()) {
+            throw new IllegalArgumentException(String.format(
+                    "Context for repository \"%s\" in \"%s\" already exists with other values of %s",
+                    context.metricsRemote, context.localRepositoryRoot, conflicts));
+        }
+        return context;
+    }
+
+    private List<String> conflictingOptions(GitterContext c) {
+        List<String> conflicts = new ArrayList<>();
+        BiConsumer<String, Boolean> check = (option, same) -> {
+            if (!same) {
+                conflicts.add(option);
+            }
+        };
+        check.accept("snapshotCacheSize", snapshotCacheSize == c.snapshotCacheSize);
+        check.accept("resourceCacheSize", resourceCacheSize == c.resourceCacheSize);
+        check.accept("pushRetries", pushRetries == c.pushRetries);
+        check.accept("lazySpecLoading", lazySpecLoading == c.lazySpecLoading);
+        check.accept("specInterning", specInterning == c.specInterning);
+        check.accept("packedGitLimit", packedGitLimit == c.packedGitLimit);
+        check.accept("deltaBaseCacheLimit", deltaBaseCacheLimit == c.deltaBaseCacheLimit);
+        check.accept("packedGitMMAP", packedGitMMAP == c.packedGitMMAP);
+        check.accept("cloneDepth", cloneDepth == c.cloneDepth);
+        check.accept("sparseCheckout", sparseCheckout == c.sparseCheckout);
+        return conflicts;
     }
 
     /**
@@ -65,7 +155,8 @@ public class GitterContext implements GitConfig {
      * repository for which this context is created
      * <p>
      * None of the update operations are thread-safe and operations should be
-     * synchronized using Gitter's internal lock objects
+     * synchronized using Gitter's internal lock objects. Operations that only read
+     * working tree can share the lock, see {@link Gitter#lockRead()}
      *
      * <pre>
      * {@code
@@ -88,6 +179,150 @@ public class GitterContext implements GitConfig {
         return gitters.computeIfAbsent(branch, k -> new Gitter(this, k));
     }
 
+    /**
+     * Closes repository handles of all branches and of the shared object store held by this context.
+     * Context remains usable, handles are reopened on next operation
+     */
+    public void close() {
+        gitters.values().forEach(Gitter::close);
+        objectStore.close();
+    }
+
+    /**
+     * Removes Gitter of the branch from this context and closes its repository handle.
+     * Should be used for branches deleted from remote repository, so their handles are not kept open
+     *
+     * @param branch Name of the branch
+     */
+    public void evict(String branch) {
+        Gitter gitter = gitters.remove(branch);
+        if (gitter != null) {
+            gitter.close();
+        }
+    }
+
+    /**
+     * Returns snapshot cache shared by all branches of this context.
+     * Capacity of the cache is defined by {@link GitConfig#getSnapshotCacheSize()}
+     *
+     * @return Snapshot cache of this context
+     */
+    public SnapshotCache getSnapshotCache() {
+        return snapshotCache;
+    }
+
+    /**
+     * Returns cache of parsed resource files shared by all branches of this context.
+     * Capacity of the cache is defined by {@link GitConfig#getResourceCacheSize()}
+     *
+     * @return Resource cache of this context
+     */
+    public ResourceCache getResourceCache() {
+        return resourceCache;
+    }
+
+    /**
+     * Returns interner shared by all branches of this context, which deduplicates specs of loaded resources
+     * if {@link GitConfig#isSpecInterning()} is enabled
+     *
+     * @return Spec interner of this context
+     */
+    public SpecInterner getSpecInterner() {
+        return specInterner;
+    }
+
+    /**
+     * Returns how many times {@link Gitter#repairCache()} was called for branches of this context,
+     * grouped by the tier that made local cache consistent
+     *
+     * @return Map, whose keys are repair tiers and values are counts
+     */
+    public Map<RepairTier, Long> getRepairCounts() {
+        Map<RepairTier, Long> counts = new EnumMap<>(RepairTier.class);
+        repairCounts.forEach((tier, count) -> counts.put(tier, count.get()));
+        return counts;
+    }
+
+    void recordRepair(String branch, RepairTier tier) {
+        repairCounts.get(tier).incrementAndGet();
+        metrics.cacheRepaired(metricsRemote, branch, tier);
+    }
+
+    /**
+     * Returns watcher, which notifies about changes of the branches in remote repository.
+     * Watcher is not started until {@link BranchWatcher#start()} is called
+     *
+     * @return Branch watcher of this context
+     */
+    public BranchWatcher getWatcher() {
+        return watcher;
+    }
+
+    /**
+     * Downloads latest versions of given branches from remote repository into the shared object store
+     * using single fetch, without updating local caches of the branches. Branches that moved can then
+     * be refreshed without accessing remote repository again
+     *
+     * <pre>
+     * {@code
+     * for (BranchUpdate update : ctx.fetchBranches(branches).values()) {
+     *     if (update.isChanged()) {
+     *         Gitter gitter = ctx.getGitter(update.getBranch());
+     *         // lock gitter
+     *         gitter.checkout(false);
+     *     }
+     * }
+     * }
+     * </pre>
+     *
+     * @param branches names of the branches to fetch, all of them must exist in remote repository
+     * @return Map, whose keys are branch names and values describe how the branches moved
+     * @throws IOException     If repository IO operation fails
+     * @throws GitAPIException If fetch fails
+     */
+    public Map<String, BranchUpdate> fetchBranches(Collection<String> branches) throws IOException, GitAPIException {
+        return objectStore.fetch(branches, Gitter.transportConfigCallback(this));
+    }
+
+    /**
+     * Same as {@link #fetchBranches(Collection)}, but downloads all branches of remote repository.
+     * Returned map also contains branches deleted from remote repository since previous fetch
+     *
+     * @return Map, whose keys are branch names and values describe how the branches moved
+     * @throws IOException     If repository IO operation fails
+     * @throws GitAPIException If fetch fails
+     */
+    public Map<String, BranchUpdate> fetchAllBranches() throws IOException, GitAPIException {
+        return objectStore.fetchAll(Gitter.transportConfigCallback(this));
+    }
+
+    /**
+     * Fetches the branches for {@link BranchWatcher}. Branches of the shared object store are not moved,
+     * so the following {@link #fetchBranches(Collection)} still reports the branches as changed.
+     * Refs of deleted branches are dropped
+     */
+    void fetchWatched(Collection<String> branches, Collection<String> deleted) throws IOException, GitAPIException {
+        if (!branches.isEmpty()) {
+            objectStore.fetch(branches, ObjectStore.WATCHED_REFS, Gitter.transportConfigCallback(this));
+        }
+        objectStore.delete(deleted, ObjectStore.WATCHED_REFS);
+    }
+
+    /**
+     * Returns reader of the commits fetched into the shared object store by {@link #fetchBranches(Collection)}
+     * or {@link #fetchAllBranches()}. Reading does not create local caches of the branches and does not require
+     * locking any {@link Gitter}
+     *
+     * @return reader of the shared object store
+     */
+    public CommitReader getStoreReader() {
+        return objectStore;
+    }
+
+    ObjectStore getObjectStore() {
+        return objectStore;
+    }
+
     /**
      * Returns list of branches known at remote repository for which this context object is created
      *
@@ -108,6 +343,23 @@ public class GitterContext implements GitConfig {
         return Gitter.getAllBranchesCommits(this);
     }
 
+    private void installWindowCache() {
+        if (packedGitLimit == 0 && deltaBaseCacheLimit == 0 && !packedGitMMAP) {
+            return;
+        }
+
+        // window cache is a JVM-wide singleton, so last context configuring it wins
+        WindowCacheConfig windowCacheConfig = new WindowCacheConfig();
+        if (packedGitLimit > 0) {
+            windowCacheConfig.setPackedGitLimit(packedGitLimit);
+        }
+        if (deltaBaseCacheLimit > 0) {
+            windowCacheConfig.setDeltaBaseCacheLimit(deltaBaseCacheLimit);
+        }
+        windowCacheConfig.setPackedGitMMAP(packedGitMMAP);
+        windowCacheConfig.install();
+    }
+
     private GitterContext(GitConfig config) {
         remoteRepository = config.getRemoteRepository();
         httpAuthUsername = config.getHttpAuthUsername();
@@ -115,6 +367,27 @@ public class GitterContext implements GitConfig {
         localRepositoryRoot = config.getLocalRepositoryRoot();
         sshDir = config.getSshDir();
         privateKey = config.getPrivateKey();
+        snapshotCacheSize = config.getSnapshotCacheSize();
+        resourceCacheSize = config.getResourceCacheSize();
+        pushRetries = config.getPushRetries();
+        lazySpecLoading = config.isLazySpecLoading();
+        specInterning = config.isSpecInterning();
+        packedGitLimit = config.getPackedGitLimit();
+        deltaBaseCacheLimit = config.getDeltaBaseCacheLimit();
+        packedGitMMAP = config.isPackedGitMMAP();
+        cloneDepth = config.getCloneDepth();
+        sparseCheckout = config.isSparseCheckout();
+        metrics = Objects.requireNonNull(config.getMetrics(), "metrics");
+        metricsRemote = withoutCredentials(remoteRepository);
+    }
+
+    private static String withoutCredentials(String remoteRepository) {
+        try {
+            return new URIish(remoteRepository).setUser(null).setPass(null).toString();
+        } catch (URISyntaxException e) {
+            // unparsable URL might still contain credentials
+            return "";
+        }
     }
 
     @Override
@@ -147,6 +420,70 @@ public class GitterContext implements GitConfig {
         return privateKey;
     }
 
+    @Override
+    public int getSnapshotCacheSize() {
+        return snapshotCacheSize;
+    }
+
+    @Override
+    public int getResourceCacheSize() {
+        return resourceCacheSize;
+    }
+
+    @Override
+    public int getPushRetries() {
+        return pushRetries;
+    }
+
+    @Override
+    public boolean isLazySpecLoading() {
+        return lazySpecLoading;
+    }
+
+    @Override
+    public boolean isSpecInterning() {
+        return specInterning;
+    }
+
+    @Override
+    public long getPackedGitLimit() {
+        return packedGitLimit;
+    }
+
+    @Override
+    public int getDeltaBaseCacheLimit() {
+        return deltaBaseCacheLimit;
+    }
+
+    @Override
+    public boolean isPackedGitMMAP() {
+        return packedGitMMAP;
+    }
+
+    @Override
+    public int getCloneDepth() {
+        return cloneDepth;
+    }
+
+    @Override
+    public boolean isSparseCheckout() {
+        return sparseCheckout;
+    }
+
+    @Override
+    public RepositoryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns remote repository URL without user name and password, which measurements are tagged with
+     *
+     * @return remote repository URL safe to publish
+     */
+    public String getMetricsRemote() {
+        return metricsRemote;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -0,0 +1,468 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.git;
+
+import com.exactpro.th2.infrarepo.metrics.GitOperation;
+import com.exactpro.th2.infrarepo.metrics.RepositoryMetrics;
+import org.eclipse.jgit.api.FetchCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.TransportConfigCallback;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.LockFile;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.TagOpt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bare repository holding objects of all branches of the remote repository.
+ * Local caches of the branches are linked to it through git alternates,
+ * so objects shared by different branches are downloaded and stored only once.
+ * Fetched commits can be read straight from the store, without local cache of the branch.
+ */
+class ObjectStore implements CommitReader {
+
+    // git does not allow path components starting with '.' in branch names,
+    // so this directory never clashes with local caches of the branches
+    private static final String STORE_DIR = ".objects.git";
+
+    private static final String ALTERNATES_FILE = "objects/info/alternates";
+
+    private static final String SHALLOW_FILE = "shallow";
+
+    // fetches download branches under refs private to each fetch, see fetch(List, String, boolean, ...)
+    private static final String STAGING_REFS = "refs/fetching/";
+
+    // branches fetched by BranchWatcher are kept apart from the branches of the store,
+    // so the watcher does not hide their moves from GitterContext.fetchBranches callers
+    static final String WATCHED_REFS = "refs/watched/";
+
+    private final Logger logger = LoggerFactory.getLogger(ObjectStore.class);
+
+    private final GitterContext config;
+
+    private final File storeDir;
+
+    // fetches of different branches and reads run concurrently under read lock, creation and closing of the store
+    // and updates of its branches take write lock, so that each fetch moves branches atomically
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final AtomicLong fetches = new AtomicLong();
+
+    // opened under either side of lock, closed under write lock only
+    private volatile Repository repository;
+
+    // guarded by lock
+    private boolean prepared;
+
+    ObjectStore(GitterContext config) {
+        this.config = config;
+        this.storeDir = new File(config.getLocalRepositoryRoot(), STORE_DIR);
+    }
+
+    /**
+     * Downloads latest versions of the branches from remote repository into the store in one fetch
+     *
+     * @param branches names of the branches to fetch
+     * @param callback transport configuration for the remote repository
+     * @return Map, whose keys are branch names and values describe how the branches moved
+     */
+    Map<String, BranchUpdate> fetch(Collection<String> branches, TransportConfigCallback callback)
+            throws IOException, GitAPIException {
+
+        return fetch(branches, Gitter.REFS_HEADS, callback);
+    }
+
+    /**
+     * Same as {@link #fetch(Collection, TransportConfigCallback)}, but fetched commits are stored
+     * in refs under given prefix instead of the branches of the store
+     *
+     * @param branches names of the branches to fetch
+     * @param target   prefix of the refs to store fetched commits to, such as {@link #WATCHED_REFS}
+     * @param callback transport configuration for the remote repository
+     * @return Map, whose keys are branch names and values describe how the refs moved
+     */
+    Map<String, BranchUpdate> fetch(Collection<String> branches, String target, TransportConfigCallback callback)
+            throws IOException, GitAPIException {
+
+        String staging = STAGING_REFS + fetches.incrementAndGet() + "/";
+        List<RefSpec> refSpecs = new ArrayList<>();
+        for (String branch : branches) {
+            refSpecs.add(new RefSpec("+" + Gitter.REFS_HEADS + branch + ":" + staging + branch));
+        }
+        return fetch(refSpecs, staging, target, false, callback);
+    }
+
+    /**
+     * Downloads latest versions of all branches from remote repository into the store in one fetch.
+     * Branches deleted from remote repository are deleted from the store as well
+     *
+     * @param callback transport configuration for the remote repository
+     * @return Map, whose keys are branch names and values describe how the branches moved
+     */
+    Map<String, BranchUpdate> fetchAll(TransportConfigCallback callback) throws IOException, GitAPIException {
+
+        String staging = STAGING_REFS + fetches.incrementAndGet() + "/";
+        RefSpec refSpec = new RefSpec("+" + Gitter.REFS_HEADS + "*:" + staging + "*");
+        return fetch(List.of(refSpec), staging, Gitter.REFS_HEADS, true, callback);
+    }
+
+    /**
+     * Objects are downloaded under read lock into refs private to this fetch, which are then moved to the target
+     * refs under write lock. Shallow fetch rewrites list of the shallow commits of the store, so it is done under
+     * write lock entirely
+     */
+    private Map<String, BranchUpdate> fetch(
+            List<RefSpec> refSpecs,
+            String staging,
+            String target,
+            boolean removeDeletedRefs,
+            TransportConfigCallback callback
+    ) throws IOException, GitAPIException {
+
+        Lock transferLock = config.getCloneDepth() > 0 ? lock.writeLock() : lock.readLock();
+        prepare();
+        try {
+            transferLock.lock();
+            try (Git git = new Git(open())) {
+                FetchCommand fetch = git.fetch()
+                        .setRemote(config.getRemoteRepository())
+                        .setRefSpecs(refSpecs)
+                        .setTagOpt(TagOpt.FETCH_TAGS)
+                        .setTransportConfigCallback(callback);
+                if (config.getCloneDepth() > 0) {
+                    fetch.setDepth(config.getCloneDepth());
+                }
+                call(fetch, refSpecs);
+            } finally {
+                transferLock.unlock();
+            }
+
+            lock.writeLock().lock();
+            try {
+                Repository repo = open();
+                Map<String, String> before = branches(repo, target);
+                Map<String, String> fetched = branches(repo, staging);
+                for (Map.Entry<String, String> e : fetched.entrySet()) {
+                    updateRef(repo, target + e.getKey(), ObjectId.fromString(e.getValue()));
+                }
+                if (removeDeletedRefs) {
+                    for (String branch : before.keySet()) {
+                        if (!fetched.containsKey(branch)) {
+                            updateRef(repo, target + branch, null);
+                        }
+                    }
+                }
+                Map<String, String> after = branches(repo, target);
+
+                Map<String, BranchUpdate> updates = new HashMap<>();
+                for (RefSpec refSpec : refSpecs) {
+                    if (!refSpec.isWildcard()) {
+                        String branch = refSpec.getSource().substring(Gitter.REFS_HEADS.length());
+                        updates.put(branch, new BranchUpdate(branch, before.get(branch), after.get(branch)));
+                    }
+                }
+                if (removeDeletedRefs) {
+                    Set<String> all = new HashSet<>(before.keySet());
+                    all.addAll(after.keySet());
+                    for (String branch : all) {
+                        updates.put(branch, new BranchUpdate(branch, before.get(branch), after.get(branch)));
+                    }
+                }
+                return updates;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            deleteStaging(staging);
+        }
+    }
+
+    // creates the store if it is missing and drops refs left by fetches interrupted before they were cleaned up
+    private void prepare() throws IOException, GitAPIException {
+        lock.writeLock().lock();
+        try {
+            if (!storeDir.exists()) {
+                close();
+                Git.init().setBare(true).setGitDir(storeDir).call().close();
+                logger.info("shared object store was not present, created \"{}\"", storeDir.getAbsolutePath());
+                prepared = true;
+            }
+            if (!prepared) {
+                deleteRefs(open(), STAGING_REFS);
+                prepared = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void deleteStaging(String staging) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (repository != null) {
+                deleteRefs(repository, staging);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes refs of the branches under given prefix, so commits they hold can be garbage collected
+     *
+     * @param branches names of the branches
+     * @param target   prefix of the refs, such as {@link #WATCHED_REFS}
+     */
+    void delete(Collection<String> branches, String target) throws IOException {
+        if (!storeDir.exists()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Repository repo = open();
+            for (String branch : branches) {
+                updateRef(repo, target + branch, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void deleteRefs(Repository repo, String prefix) throws IOException {
+        for (Ref ref : repo.getRefDatabase().getRefsByPrefix(prefix)) {
+            updateRef(repo, ref.getName(), null);
+        }
+    }
+
+    // moves or deletes ref if objectId is null
+    private static void updateRef(Repository repo, String name, ObjectId objectId) throws IOException {
+        RefUpdate update = repo.updateRef(name);
+        update.setForceUpdate(true);
+        RefUpdate.Result result;
+        if (objectId == null) {
+            result = update.delete();
+        } else {
+            update.setNewObjectId(objectId);
+            result = update.forceUpdate();
+        }
+        if (result == RefUpdate.Result.LOCK_FAILURE
+                || result == RefUpdate.Result.IO_FAILURE
+                || result == RefUpdate.Result.REJECTED) {
+            throw new IOException(String.format("Error updating \"%s\" of the shared object store: %s",
+                    name, result));
+        }
+    }
+
+    private void call(FetchCommand fetch, List<RefSpec> refSpecs) throws GitAPIException {
+
+        // fetch of several branches is reported without branch
+        String branch = refSpecs.size() == 1 && !refSpecs.get(0).isWildcard()
+                ? refSpecs.get(0).getSource().substring(Gitter.REFS_HEADS.length())
+                : null;
+        RepositoryMetrics metrics = config.getMetrics();
+        TransferMonitor monitor = new TransferMonitor();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            fetch.setProgressMonitor(monitor).call();
+            success = true;
+        } finally {
+            metrics.operationCompleted(GitOperation.FETCH, config.getMetricsRemote(), branch,
+                    System.nanoTime() - start, success);
+            metrics.objectsTransferred(GitOperation.FETCH, config.getMetricsRemote(), branch, monitor.getObjects());
+        }
+    }
+
+    private static Map<String, String> branches(Repository repo, String prefix) throws IOException {
+        Map<String, String> branches = new HashMap<>();
+        for (Ref ref : repo.getRefDatabase().getRefsByPrefix(prefix)) {
+            branches.put(ref.getName().substring(prefix.length()), ref.getObjectId().getName());
+        }
+        return branches;
+    }
+
+    /**
+     * Resolves revision using refs of the store, such as fetched branches and tags
+     *
+     * @param revision revision string understood by git
+     * @return object id or null if revision can not be resolved
+     */
+    ObjectId resolveId(String revision) throws IOException {
+
+        if (!storeDir.exists()) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            return open().resolve(revision);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String resolve(String revision) throws IOException {
+
+        return resolveCommit(revision).getName();
+    }
+
+    @Override
+    public Map<String, ObjectId> listFiles(String revision, Collection<String> directories) throws IOException {
+
+        ObjectId commitId = resolveCommit(revision);
+        lock.readLock().lock();
+        try {
+            return Gitter.listFiles(open(), commitId, directories);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public byte[] readBlob(ObjectId blobId) throws IOException {
+
+        lock.readLock().lock();
+        try {
+            return open().open(blobId, Constants.OBJ_BLOB).getBytes(Integer.MAX_VALUE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private ObjectId resolveCommit(String revision) throws IOException {
+        ObjectId id = resolveId(revision + "^{commit}");
+        if (id == null) {
+            throw new IllegalArgumentException(String.format("Revision \"%s\" not found", revision));
+        }
+        return id;
+    }
+
+    /**
+     * Closes repository handle of the store, it is reopened on next operation
+     */
+    void close() {
+        lock.writeLock().lock();
+        try {
+            if (repository != null) {
+                repository.close();
+                repository = null;
+            }
+            prepared = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // must be called under either side of lock, concurrent readers open the handle only once
+    private Repository open() throws IOException {
+        Repository repo = repository;
+        if (repo == null) {
+            synchronized (this) {
+                if (repository == null) {
+                    repository = new FileRepository(storeDir);
+                }
+                repo = repository;
+            }
+        }
+        return repo;
+    }
+
+    /**
+     * Makes objects of the store visible to given repository by registering the store as its alternate.
+     * Repository handles opened before the store was linked do not see its objects and must be reopened
+     *
+     * @param gitDir git directory of the repository
+     * @return true if the store was not linked to the repository before
+     */
+    boolean link(File gitDir) throws IOException {
+
+        File alternates = new File(gitDir, ALTERNATES_FILE);
+        String objectsDir = new File(storeDir, "objects").getAbsolutePath();
+        if (alternates.exists() && Files.readAllLines(alternates.toPath()).contains(objectsDir)) {
+            return false;
+        }
+
+        alternates.getParentFile().mkdirs();
+        List<String> lines = alternates.exists() ? Files.readAllLines(alternates.toPath()) : new ArrayList<>();
+        lines.add(objectsDir);
+        Files.write(alternates.toPath(), lines);
+        return true;
+    }
+
+    /**
+     * Copies list of the shallow commits of the store to given repository linked to the store,
+     * so that walking history of its commits stops at the same commits instead of failing on missing parents
+     *
+     * @param gitDir git directory of the repository
+     */
+    void copyShallow(File gitDir) throws IOException {
+
+        File source = new File(storeDir, SHALLOW_FILE);
+        File target = new File(gitDir, SHALLOW_FILE);
+        byte[] shallow;
+        // shallow fetch rewrites the list under write lock
+        lock.readLock().lock();
+        try {
+            shallow = source.exists() ? Files.readAllBytes(source.toPath()) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (shallow == null) {
+            Files.deleteIfExists(target.toPath());
+            return;
+        }
+
+        if (target.exists() && Arrays.equals(shallow, Files.readAllBytes(target.toPath()))) {
+            return;
+        }
+        // replaced atomically, same as git does, so concurrent readers never see partial file
+        LockFile lockFile = new LockFile(target);
+        if (!lockFile.lock()) {
+            throw new IOException(String.format("Error locking \"%s\"", target.getAbsolutePath()));
+        }
+        try {
+            lockFile.write(shallow);
+            if (!lockFile.commit()) {
+                throw new IOException(String.format("Error writing \"%s\"", target.getAbsolutePath()));
+            }
+        } finally {
+            lockFile.unlock();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.git;
+
+/**
+ * Steps of {@link Gitter#repairCache()} in the order they are tried, from the cheapest to the most expensive
+ */
+public enum RepairTier {
+    /**
+     * Local cache was consistent, nothing had to be repaired
+     */
+    NONE,
+    /**
+     * Interrupted merge, rebase, cherry-pick or revert was aborted and stale index lock was removed
+     */
+    ABORT,
+    /**
+     * Local branch was checked out and hard reset to the last downloaded remote commit
+     */
+    RESET,
+    /**
+     * Untracked files and directories were removed from the working tree
+     */
+    CLEAN,
+    /**
+     * Branch was downloaded from remote repository again and working tree was reset to it
+     */
+    FETCH,
+    /**
+     * Local cache was deleted and created again
+     */
+    RECLONE
+}
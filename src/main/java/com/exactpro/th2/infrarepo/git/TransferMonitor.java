@@ -0,0 +1,51 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.git;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.EmptyProgressMonitor;
+
+/**
+ * Counts objects JGit reports as received by fetch or written by push
+ */
+class TransferMonitor extends EmptyProgressMonitor {
+
+    private boolean transferring;
+
+    private long objects;
+
+    @Override
+    public void beginTask(String title, int totalWork) {
+        transferring = JGitText.get().receivingObjects.equals(title) || JGitText.get().writingObjects.equals(title);
+    }
+
+    @Override
+    public void update(int completed) {
+        if (transferring) {
+            objects += completed;
+        }
+    }
+
+    @Override
+    public void endTask() {
+        transferring = false;
+    }
+
+    long getObjects() {
+        return objects;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.metrics;
+
+/**
+ * Git operations timed by {@link RepositoryMetrics#operationCompleted}
+ */
+public enum GitOperation {
+    /**
+     * Download of the branch and update of the working tree, includes {@link #FETCH}
+     */
+    CHECKOUT,
+    /**
+     * Download of one or more branches into the shared object store
+     */
+    FETCH,
+    /**
+     * Upload of a commit to remote repository, one per attempt if push is retried
+     */
+    PUSH,
+    /**
+     * Listing of the branches of remote repository
+     */
+    LS_REMOTE
+}
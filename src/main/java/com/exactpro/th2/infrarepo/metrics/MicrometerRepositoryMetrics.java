@@ -0,0 +1,121 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.metrics;
+
+import com.exactpro.th2.infrarepo.git.RepairTier;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes measurements to Micrometer registry. Micrometer is an optional dependency,
+ * applications using this class must add {@code io.micrometer:micrometer-core} themselves
+ *
+ * <pre>
+ * {@code
+ * RepositoryMetrics metrics = new MicrometerRepositoryMetrics(registry);
+ * GitConfig config = new GitConfig() {
+ *     ...
+ *     public RepositoryMetrics getMetrics() {
+ *         return metrics;
+ *     }
+ * };
+ * }
+ * </pre>
+ */
+public class MicrometerRepositoryMetrics implements RepositoryMetrics {
+
+    public static final String PREFIX = "th2.infra.repo.";
+
+    private static final String REMOTE = "remote";
+
+    private static final String BRANCH = "branch";
+
+    private final MeterRegistry registry;
+
+    public MicrometerRepositoryMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    private static Tags tags(String remote, String branch) {
+        return Tags.of(REMOTE, remote, BRANCH, branch == null ? "" : branch);
+    }
+
+    private static String operation(GitOperation operation) {
+        return operation.name().toLowerCase();
+    }
+
+    private static String mode(boolean exclusive) {
+        return exclusive ? "exclusive" : "shared";
+    }
+
+    @Override
+    public void operationCompleted(GitOperation operation, String remote, String branch, long nanos,
+                                   boolean success) {
+        registry.timer(PREFIX + "git.operation", tags(remote, branch)
+                        .and("operation", operation(operation))
+                        .and("outcome", success ? "success" : "failure"))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void objectsTransferred(GitOperation operation, String remote, String branch, long objects) {
+        registry.summary(PREFIX + "git.objects", tags(remote, branch).and("operation", operation(operation)))
+                .record(objects);
+    }
+
+    @Override
+    public void resourcesLoaded(String remote, String branch, String kind, int scanned, int parsed, int skipped,
+                                long parseNanos) {
+        Tags tags = tags(remote, branch).and("kind", kind);
+        registry.counter(PREFIX + "resources.scanned", tags).increment(scanned);
+        registry.counter(PREFIX + "resources.parsed", tags).increment(parsed);
+        registry.counter(PREFIX + "resources.skipped", tags).increment(skipped);
+        registry.timer(PREFIX + "resources.parse", tags).record(parseNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void snapshotLoaded(String remote, String branch, int resources, long nanos) {
+        Tags tags = tags(remote, branch);
+        registry.timer(PREFIX + "snapshot.load", tags).record(nanos, TimeUnit.NANOSECONDS);
+        registry.summary(PREFIX + "snapshot.resources", tags).record(resources);
+    }
+
+    @Override
+    public void lockWaited(String remote, String branch, boolean exclusive, long nanos) {
+        registry.timer(PREFIX + "lock.wait", tags(remote, branch).and("mode", mode(exclusive)))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void lockHeld(String remote, String branch, boolean exclusive, long nanos) {
+        registry.timer(PREFIX + "lock.hold", tags(remote, branch).and("mode", mode(exclusive)))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void cacheRecreated(String remote, String branch) {
+        registry.counter(PREFIX + "cache.recreated", tags(remote, branch)).increment();
+    }
+
+    @Override
+    public void cacheRepaired(String remote, String branch, RepairTier tier) {
+        registry.counter(PREFIX + "cache.repaired", tags(remote, branch).and("tier", tier.name().toLowerCase()))
+                .increment();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.metrics;
+
+import com.exactpro.th2.infrarepo.git.RepairTier;
+
+/**
+ * Receives measurements of git operations and snapshot loading, see {@link
+ * com.exactpro.th2.infrarepo.git.GitConfig#getMetrics()}. All methods do nothing by default, so implementations
+ * override only those they are interested in. Methods are called on the threads doing the measured work,
+ * often concurrently, and must return quickly.
+ * <p>
+ * Every measurement is tagged with remote repository URL, without user name and password,
+ * and the branch, which is null for operations on several branches at once
+ */
+public interface RepositoryMetrics {
+
+    RepositoryMetrics NOOP = new RepositoryMetrics() {
+    };
+
+    /**
+     * @param success false if the operation threw or push was rejected
+     */
+    default void operationCompleted(GitOperation operation, String remote, String branch, long nanos,
+                                    boolean success) {
+    }
+
+    /**
+     * Number of git objects received by {@link GitOperation#FETCH} or sent by {@link GitOperation#PUSH},
+     * as reported by JGit progress. JGit does not report number of bytes of the transferred packs
+     */
+    default void objectsTransferred(GitOperation operation, String remote, String branch, long objects) {
+    }
+
+    /**
+     * Resource files of one kind read while loading a snapshot. Kind is empty for files that could not be parsed
+     *
+     * @param scanned    number of files read
+     * @param parsed     number of files parsed, the others were taken from resource cache
+     * @param skipped    number of files left out of the snapshot as unparsable or invalid
+     * @param parseNanos total time spent parsing the files
+     */
+    default void resourcesLoaded(String remote, String branch, String kind, int scanned, int parsed, int skipped,
+                                 long parseNanos) {
+    }
+
+    /**
+     * Snapshot was loaded, fully or by applying changes to the previous one.
+     * Snapshots returned from snapshot cache are not reported
+     *
+     * @param resources number of resources in the snapshot
+     */
+    default void snapshotLoaded(String remote, String branch, int resources, long nanos) {
+    }
+
+    /**
+     * Time the thread waited to acquire exclusive or shared lock of the branch. Reentrant acquisitions
+     * are not reported
+     */
+    default void lockWaited(String remote, String branch, boolean exclusive, long nanos) {
+    }
+
+    /**
+     * Time the lock of the branch was held, from its acquisition to its final release by the thread
+     */
+    default void lockHeld(String remote, String branch, boolean exclusive, long nanos) {
+    }
+
+    /**
+     * Local cache of the branch was deleted and created again
+     */
+    default void cacheRecreated(String remote, String branch) {
+    }
+
+    /**
+     * Repair of the local cache of the branch completed,
+     * see {@link com.exactpro.th2.infrarepo.git.Gitter#repairCache()}
+     *
+     * @param tier step that made local cache consistent, {@link RepairTier#NONE} if nothing had to be repaired
+     */
+    default void cacheRepaired(String remote, String branch, RepairTier tier) {
+    }
+}
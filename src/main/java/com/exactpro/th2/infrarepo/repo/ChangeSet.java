@@ -0,0 +1,164 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.repo;
+
+import com.exactpro.th2.infrarepo.InconsistentRepositoryStateException;
+import com.exactpro.th2.infrarepo.ResourceType;
+import com.exactpro.th2.infrarepo.git.Gitter;
+import com.exactpro.th2.infrarepo.git.GitterContext;
+import org.eclipse.jgit.api.errors.GitAPIException;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.exactpro.th2.infrarepo.SchemaUtils.YAML_MAPPER;
+
+/**
+ * Resource changes staged in memory and committed to the branch as a single commit,
+ * without writing them to the working tree
+ *
+ * <pre>
+ * {@code
+ * gitter.lock()
+ * try {
+ *     new ChangeSet()
+ *             .put(box)
+ *             .delete(dictionary)
+ *             .commitAndPush(gitter, "update schema");
+ * } finally {
+ *     gitter.unlock();
+ * }
+ * }
+ * </pre>
+ */
+public class ChangeSet {
+
+    // contents of created or updated resources keyed by path without extension, extension is chosen on commit
+    private final Map<String, byte[]> files = new LinkedHashMap<>();
+
+    private final Set<String> directories = new HashSet<>();
+
+    private final Set<String> deletions = new LinkedHashSet<>();
+
+    /**
+     * Stages creation or update of the resource. Resource is stored in the file with ".yml" extension,
+     * unless it is already stored in the file with ".yaml" extension, same as {@link Repository#update} does
+     *
+     * @param resource resource to store, its source hash is updated to the hash of the staged contents
+     * @return this change set
+     * @throws IOException              If resource can not be serialized
+     * @throws IllegalArgumentException If resource is not stored in repository
+     */
+    public <T> ChangeSet put(GenericResource<T> resource) throws IOException {
+
+        byte[] contents = YAML_MAPPER.writeValueAsBytes(resource);
+        resource.setSourceHash(SourceHash.of(contents));
+
+        String path = pathFor(resource, "");
+        files.put(path, contents);
+        directories.add(ResourceType.forKind(resource.getKind()).path());
+        deletions.remove(path + Repository.YML_ALIAS);
+        deletions.remove(path + Repository.YAML_ALIAS);
+        return this;
+    }
+
+    /**
+     * Stages removal of the resource. Removing resource that does not exist has no effect
+     *
+     * @param resource resource to remove, only its kind and name are used
+     * @return this change set
+     * @throws IllegalArgumentException If resource is not stored in repository
+     */
+    public <T> ChangeSet delete(GenericResource<T> resource) {
+
+        for (String extension : new String[]{Repository.YML_ALIAS, Repository.YAML_ALIAS}) {
+            deletions.add(pathFor(resource, extension));
+        }
+        files.remove(pathFor(resource, ""));
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return files.isEmpty() && deletions.isEmpty();
+    }
+
+    public void clear() {
+        files.clear();
+        directories.clear();
+        deletions.clear();
+    }
+
+    /**
+     * Commits staged changes on top of the latest downloaded commit of the branch and pushes them
+     * to remote repository, see {@link Gitter#commitAndPush(Map, java.util.Collection, String)}.
+     * Extensions of the files of updated resources are taken from the latest fetched commit of the branch.
+     * Staged changes are kept, so the same change set can be committed again if push fails
+     *
+     * @param gitter  Gitter object for which changes will be committed.
+     *                Must be locked externally as this method does not lock repository by itself
+     * @param message commit message string
+     * @return null if changes did not modify the branch or commit ref of the latest commit in the remote repository
+     * @throws InconsistentRepositoryStateException If push failed or was rejected
+     * @throws IOException                          If repository IO operation fails
+     * @throws GitAPIException                      If fetch fails
+     */
+    public String commitAndPush(Gitter gitter, String message)
+            throws IOException, GitAPIException, InconsistentRepositoryStateException {
+
+        if (isEmpty()) {
+            return null;
+        }
+
+        Set<String> existing = existingFiles(gitter);
+        Map<String, byte[]> changes = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            String yaml = file.getKey() + Repository.YAML_ALIAS;
+            boolean isYaml = existing.contains(yaml) && !existing.contains(file.getKey() + Repository.YML_ALIAS);
+            changes.put(isYaml ? yaml : file.getKey() + Repository.YML_ALIAS, file.getValue());
+        }
+        return gitter.commitAndPush(changes, deletions, message);
+    }
+
+    private Set<String> existingFiles(Gitter gitter) throws IOException, GitAPIException {
+        if (directories.isEmpty()) {
+            return Set.of();
+        }
+        GitterContext ctx = gitter.getContext();
+        String branch = Gitter.REFS_HEADS + gitter.getBranch();
+        try {
+            return ctx.getStoreReader().listFiles(branch, directories).keySet();
+        } catch (IllegalArgumentException e) {
+            // branch was not fetched yet
+            ctx.fetchBranches(List.of(gitter.getBranch()));
+            return ctx.getStoreReader().listFiles(branch, directories).keySet();
+        }
+    }
+
+    private static <T> String pathFor(GenericResource<T> resource, String extension) {
+        ResourceType type = ResourceType.forKind(resource.getKind());
+        if (type == null || !type.isRepositoryResource()) {
+            throw new IllegalArgumentException(
+                    String.format("Resources of kind \"%s\" are not stored in repository", resource.getKind()));
+        }
+        return Repository.relativePath(type.path(), resource.getMetadata().getName() + extension);
+    }
+}
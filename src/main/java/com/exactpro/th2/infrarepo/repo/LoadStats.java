@@ -0,0 +1,78 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.repo;
+
+import com.exactpro.th2.infrarepo.git.GitterContext;
+import com.exactpro.th2.infrarepo.metrics.RepositoryMetrics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts of resource files read while loading one snapshot, grouped by kind.
+ * Files may be parsed concurrently, so all updates are synchronized
+ */
+class LoadStats {
+
+    private static final class KindStats {
+        private int scanned;
+
+        private int parsed;
+
+        private int skipped;
+
+        private long parseNanos;
+    }
+
+    private final long start = System.nanoTime();
+
+    private final Map<String, KindStats> kinds = new HashMap<>();
+
+    private KindStats of(RepositoryResource resource) {
+        String kind = resource == null || resource.getKind() == null ? "" : resource.getKind();
+        return kinds.computeIfAbsent(kind, k -> new KindStats());
+    }
+
+    /**
+     * @param resource resource read from the file, null if it could not be parsed
+     * @param valid    whether resource was included in the snapshot
+     */
+    synchronized void scanned(RepositoryResource resource, boolean valid) {
+        KindStats stats = of(resource);
+        stats.scanned++;
+        if (!valid) {
+            stats.skipped++;
+        }
+    }
+
+    synchronized void parsed(RepositoryResource resource, long nanos) {
+        KindStats stats = of(resource);
+        stats.parsed++;
+        stats.parseNanos += nanos;
+    }
+
+    /**
+     * Reports the counts and the snapshot, timing load from creation of this object
+     */
+    synchronized void report(GitterContext ctx, String branch, RepositorySnapshot snapshot) {
+        RepositoryMetrics metrics = ctx.getMetrics();
+        kinds.forEach((kind, stats) -> metrics.resourcesLoaded(ctx.getMetricsRemote(), branch, kind,
+                stats.scanned, stats.parsed, stats.skipped, stats.parseNanos));
+        metrics.snapshotLoaded(ctx.getMetricsRemote(), branch, snapshot.getResources().size(),
+                System.nanoTime() - start);
+    }
+}
@@ -17,20 +17,34 @@
 package com.exactpro.th2.infrarepo.repo;
 
 import com.exactpro.th2.infrarepo.ResourceType;
+import com.exactpro.th2.infrarepo.git.CommitReader;
 import com.exactpro.th2.infrarepo.git.Gitter;
+import com.exactpro.th2.infrarepo.git.GitterContext;
 import com.exactpro.th2.infrarepo.settings.RepositorySettingsResource;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 import io.fabric8.kubernetes.api.model.ObjectMeta;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 import static com.exactpro.th2.infrarepo.SchemaUtils.JSON_MAPPER;
 import static com.exactpro.th2.infrarepo.SchemaUtils.YAML_MAPPER;
@@ -43,123 +57,452 @@ public class Repository {
 
     public static final String YAML_ALIAS = ".yaml";
 
-    private static final String SETTINGS_FILE_NAME = "infra-mgr-config";
+    public static final String SETTINGS_FILE_NAME = "infra-mgr-config";
+
+    // files of this size and larger are memory mapped instead of being read into heap
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private static final ObjectReader RESOURCE_READER = YAML_MAPPER.readerFor(RepositoryResource.class);
+
+    private static final ObjectReader LAZY_RESOURCE_READER =
+            RESOURCE_READER.withAttribute(RepositoryResource.LAZY_SPEC, Boolean.TRUE);
 
     private static Logger logger = LoggerFactory.getLogger(Repository.class);
 
+    // checkouts in progress started by getLatestSnapshot, keyed by Gitter of the branch
+    private static final Map<Gitter, CompletableFuture<RepositorySnapshot>> FLIGHTS = new ConcurrentHashMap<>();
+
+    private static ObjectReader readerFor(GitterContext ctx) {
+        ObjectReader reader = ctx.isLazySpecLoading() ? LAZY_RESOURCE_READER : RESOURCE_READER;
+        if (ctx.isSpecInterning()) {
+            reader = reader.withAttribute(RepositoryResource.SPEC_INTERNER, ctx.getSpecInterner());
+        }
+        return reader;
+    }
+
     private static RepositoryResource loadYAML(File file) throws IOException {
+        ByteBuffer contents = readFile(file);
+        return loadYAML(contents, SourceHash.of(contents), RESOURCE_READER);
+    }
+
+    private static RepositoryResource loadYAML(byte[] bytes) throws IOException {
+        return loadYAML(ByteBuffer.wrap(bytes), SourceHash.of(bytes), RESOURCE_READER);
+    }
 
-        String contents = Files.readString(file.toPath());
-        RepositoryResource resource = YAML_MAPPER.readValue(contents, RepositoryResource.class);
-        resource.setSourceHash(Repository.digest(contents));
+    private static RepositoryResource loadYAML(File file, GitterContext ctx, LoadStats stats) throws IOException {
+
+        ByteBuffer contents = readFile(file);
+        String hash = SourceHash.of(contents);
+        ResourceCache cache = ctx.getResourceCache();
+        RepositoryResource resource = cache.get(hash);
+        if (resource == null) {
+            long start = System.nanoTime();
+            resource = loadYAML(contents, hash, readerFor(ctx));
+            if (stats != null) {
+                stats.parsed(resource, System.nanoTime() - start);
+            }
+            cache.put(hash, resource);
+        }
+
+        return resource;
+    }
+
+    private static RepositoryResource loadYAML(
+            CommitReader reader,
+            GitterContext ctx,
+            ObjectId blobId,
+            LoadStats stats
+    ) throws IOException {
+
+        // blob ids are content hashes, so the blob does not even have to be read if it was parsed before
+        ResourceCache cache = ctx.getResourceCache();
+        RepositoryResource resource = cache.get(blobId.getName());
+        if (resource == null) {
+            byte[] contents = reader.readBlob(blobId);
+            long start = System.nanoTime();
+            resource = loadYAML(ByteBuffer.wrap(contents), SourceHash.of(contents), readerFor(ctx));
+            if (stats != null) {
+                stats.parsed(resource, System.nanoTime() - start);
+            }
+            cache.put(blobId.getName(), resource);
+        }
 
         return resource;
     }
 
+    /**
+     * Parses resource from the remaining bytes of the buffer, which must be UTF-8 encoded.
+     * Source hash is passed in, so file contents are neither decoded to string nor encoded back to hash them
+     */
+    private static RepositoryResource loadYAML(ByteBuffer contents, String hash, ObjectReader reader)
+            throws IOException {
+
+        RepositoryResource resource;
+        if (contents.hasArray()) {
+            resource = reader.readValue(contents.array(), contents.arrayOffset() + contents.position(),
+                    contents.remaining());
+        } else {
+            resource = reader.readValue(new ByteBufferBackedInputStream(contents.duplicate()));
+        }
+        resource.setSourceHash(hash);
+
+        return resource;
+    }
+
+    private static ByteBuffer readFile(File file) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            return buffer.flip();
+        }
+    }
+
     private static <T> void saveYAML(File file, GenericResource<T> resource) throws IOException {
 
         file.getParentFile().mkdirs();
-        String contents = YAML_MAPPER.writeValueAsString(resource);
-        resource.setSourceHash(Repository.digest(contents));
-        Files.writeString(file.toPath(), contents);
+        byte[] contents = YAML_MAPPER.writeValueAsBytes(resource);
+        resource.setSourceHash(SourceHash.of(contents));
+        Files.write(file.toPath(), contents);
     }
 
-    private static Set<RepositoryResource> loadKind(File repositoryRoot, ResourceType kind) {
-        return loadKind(repositoryRoot, kind, new HashMap<>());
+    private static Set<RepositoryResource> loadKind(File repositoryRoot, ResourceType kind, GitterContext ctx) {
+        List<ResourceType> kinds = List.of(kind);
+        Map<String, RepositoryResource> sources = parseSources(repositoryRoot, kinds, ctx, null, null);
+        return collectKind(kind, groupByKind(sources, kinds), new HashMap<>());
     }
 
-    private static Set<RepositoryResource> loadKind(
+    /**
+     * Parses every resource file located in the directories of the given kinds.
+     * Directories shared by several kinds are listed and parsed only once.
+     *
+     * @param ctx      context, which defines cache of previously parsed files and how files are parsed
+     * @param stats    counts of read files to update, or null
+     * @param executor executor to parse files on, or null to parse them on the caller's thread
+     * @return Parsed and validated resources keyed by file path relative to repository root, in file order
+     */
+    private static Map<String, RepositoryResource> parseSources(
             File repositoryRoot,
-            ResourceType kind,
-            Map<String, RepositoryResource> firstOccurrences
+            Collection<ResourceType> kinds,
+            GitterContext ctx,
+            LoadStats stats,
+            Executor executor
     ) {
-        Set<RepositoryResource> resources = new HashSet<>();
+        Map<String, Supplier<RepositoryResource>> results = new LinkedHashMap<>();
+        for (String path : pathsOf(kinds)) {
+            for (File f : listDirectory(repositoryRoot, path)) {
+                results.put(relativePath(path, f.getName()), parse(f, path, ctx, stats, executor));
+            }
+        }
+        return join(results);
+    }
 
-        if (kind.isRepositoryResource()) {
-            File dir = new File(repositoryRoot.getAbsolutePath() + "/" + kind.path());
-            if (dir.exists()) {
+    /**
+     * Same as {@link #parseSources(File, Collection, GitterContext, LoadStats, Executor)}, but reads files
+     * from the commit's tree instead of the working tree
+     */
+    private static Map<String, RepositoryResource> parseSources(
+            CommitReader reader,
+            GitterContext ctx,
+            String commitRef,
+            Collection<ResourceType> kinds,
+            LoadStats stats,
+            Executor executor
+    ) throws IOException {
+        Map<String, Supplier<RepositoryResource>> results = new LinkedHashMap<>();
+        for (Map.Entry<String, ObjectId> e : reader.listFiles(commitRef, pathsOf(kinds)).entrySet()) {
+            String file = e.getKey();
+            if (file.endsWith(YML_ALIAS) || file.endsWith(YAML_ALIAS)) {
+                results.put(file, parse(reader, ctx, file, e.getValue(), stats, executor));
+            }
+        }
+        return join(results);
+    }
 
-                if (!dir.isDirectory()) {
-                    logger.error("entry expected to be a directory: \"{}\"", dir.getAbsoluteFile());
-                    return Collections.emptySet();
-                }
+    private static Supplier<RepositoryResource> parse(
+            File f,
+            String path,
+            GitterContext ctx,
+            LoadStats stats,
+            Executor executor
+    ) {
+        return parse(f.getAbsolutePath(), f.getName(), path, () -> Repository.loadYAML(f, ctx, stats), stats,
+                executor);
+    }
 
-                File[] files = dir.listFiles();
-                if (files == null) {
-                    return resources;
-                }
+    private static Supplier<RepositoryResource> parse(
+            CommitReader reader,
+            GitterContext ctx,
+            String file,
+            ObjectId blobId,
+            LoadStats stats,
+            Executor executor
+    ) {
+        int index = file.lastIndexOf("/");
+        String path = index < 0 ? "" : file.substring(0, index);
+        String fileName = file.substring(index + 1);
+        return parse(file, fileName, path, () -> Repository.loadYAML(reader, ctx, blobId, stats), stats,
+                executor);
+    }
 
-                for (File f : files) {
-                    if (f.isFile() && (f.getAbsolutePath().endsWith(".yml") || f.getAbsolutePath().endsWith(".yaml"))) {
-                        try {
-                            RepositoryResource resource = Repository.loadYAML(f);
-                            ObjectMeta meta = resource.getMetadata();
-
-                            if (meta == null || !extractName(f.getName()).equals(meta.getName())) {
-                                logger.error("skipping \"{}\" | resource name does not match filename",
-                                        f.getAbsolutePath());
-                                continue;
-                            }
-
-                            if (!isNameLengthValid(meta.getName())) {
-                                logger.error("skipping \"{}\" | resource name must be less than {} characters",
-                                        meta.getName(), RESOURCE_NAME_MAX_LENGTH);
-                                continue;
-                            }
-
-                            if (!ResourceType.knownKinds().contains(resource.getKind())) {
-                                logger.error("skipping \"{}\" | Unknown kind \"{}\". Known values are: \"{}\"",
-                                        f.getAbsolutePath(), resource.getKind(), ResourceType.knownKinds());
-                                continue;
-                            }
-
-                            if (!ResourceType.forKind(resource.getKind()).path().equals(kind.path())) {
-                                logger.error("skipping \"{}\" | resource is located in wrong directory. kind" +
-                                        ": {}, dir:" + " {}", f.getAbsolutePath(), resource.getKind(), kind.path());
-                                continue;
-                            }
-
-                            // some directories might contain multiple resource kinds
-                            // skip other kinds as they will be checked on their iteration
-                            if (!resource.getKind().equals(kind.kind())) {
-                                continue;
-                            }
-
-                            String name = meta.getName();
-                            RepositoryResource sameNameResource = firstOccurrences.get(name);
-                            if (sameNameResource != null) {
-                                // we already encountered resource with same name
-                                // ignore both of them
-                                logger.error("\"{}/{}\" has the same name as \"{}/{}\". " +
-                                                "skipping both of them. this may cause \"{}\" to be undeployed",
-                                        resource.getKind(), name,
-                                        sameNameResource.getKind(), name,
-                                        name);
-                                resources.remove(firstOccurrences.get(name));
-                                continue;
-                            }
-
-                            resources.add(resource);
-                            firstOccurrences.put(name, resource);
-                        } catch (Exception e) {
-                            logger.error("skipping \"{}\" | exception loading resource", f.getAbsolutePath(), e);
-                        }
-                    }
-                }
+    private static Supplier<RepositoryResource> parse(
+            String location,
+            String fileName,
+            String path,
+            ResourceLoader loader,
+            LoadStats stats,
+            Executor executor
+    ) {
+        if (executor == null) {
+            RepositoryResource resource = parseFile(location, fileName, path, loader, stats);
+            return () -> resource;
+        }
+        CompletableFuture<RepositoryResource> result =
+                CompletableFuture.supplyAsync(() -> parseFile(location, fileName, path, loader, stats), executor);
+        return result::join;
+    }
+
+    private static Map<String, RepositoryResource> join(Map<String, Supplier<RepositoryResource>> results) {
+        // results are consumed in file order, so that duplicate names
+        // are resolved the same way regardless of the executor
+        Map<String, RepositoryResource> sources = new LinkedHashMap<>();
+        results.forEach((path, result) -> {
+            RepositoryResource resource = result.get();
+            if (resource != null) {
+                sources.put(path, resource);
+            }
+        });
+        return sources;
+    }
+
+    private static Set<String> pathsOf(Collection<ResourceType> kinds) {
+        Set<String> paths = new LinkedHashSet<>();
+        for (ResourceType kind : kinds) {
+            if (kind.isRepositoryResource()) {
+                paths.add(kind.path());
+            }
+        }
+        return paths;
+    }
+
+    static String relativePath(String path, String fileName) {
+        return path.isEmpty() ? fileName : path + "/" + fileName;
+    }
+
+    private static Map<ResourceType, List<RepositoryResource>> groupByKind(
+            Map<String, RepositoryResource> sources,
+            Collection<ResourceType> kinds
+    ) {
+        Map<ResourceType, List<RepositoryResource>> parsed = new EnumMap<>(ResourceType.class);
+        for (ResourceType kind : kinds) {
+            if (kind.isRepositoryResource()) {
+                parsed.put(kind, new ArrayList<>());
+            }
+        }
+
+        for (RepositoryResource resource : sources.values()) {
+            List<RepositoryResource> kindResources = parsed.get(ResourceType.forKind(resource.getKind()));
+            // some directories might contain multiple resource kinds
+            // skip kinds that were not requested
+            if (kindResources != null) {
+                kindResources.add(resource);
+            }
+        }
+        return parsed;
+    }
+
+    private static List<File> listDirectory(File repositoryRoot, String path) {
+        List<File> result = new ArrayList<>();
+
+        File dir = new File(repositoryRoot.getAbsolutePath() + "/" + path);
+        if (!dir.exists()) {
+            return result;
+        }
+
+        if (!dir.isDirectory()) {
+            logger.error("entry expected to be a directory: \"{}\"", dir.getAbsoluteFile());
+            return result;
+        }
+
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return result;
+        }
+
+        for (File f : files) {
+            if (f.isFile() && (f.getAbsolutePath().endsWith(".yml") || f.getAbsolutePath().endsWith(".yaml"))) {
+                result.add(f);
+            }
+        }
+        return result;
+    }
+
+    private static RepositoryResource parseFile(
+            String location,
+            String fileName,
+            String path,
+            ResourceLoader loader,
+            LoadStats stats
+    ) {
+        RepositoryResource resource = null;
+        boolean valid = false;
+        try {
+            resource = loader.load();
+            valid = isValid(resource, location, fileName, path);
+            return valid ? resource : null;
+        } catch (Exception e) {
+            logger.error("skipping \"{}\" | exception loading resource", location, e);
+            return null;
+        } finally {
+            if (stats != null) {
+                stats.scanned(resource, valid);
             }
         }
+    }
+
+    private static boolean isValid(RepositoryResource resource, String location, String fileName, String path) {
+        ObjectMeta meta = resource.getMetadata();
+
+        if (meta == null || !extractName(fileName).equals(meta.getName())) {
+            logger.error("skipping \"{}\" | resource name does not match filename",
+                    location);
+            return false;
+        }
+
+        if (!isNameLengthValid(meta.getName())) {
+            logger.error("skipping \"{}\" | resource name must be less than {} characters",
+                    meta.getName(), RESOURCE_NAME_MAX_LENGTH);
+            return false;
+        }
+
+        if (!ResourceType.knownKinds().contains(resource.getKind())) {
+            logger.error("skipping \"{}\" | Unknown kind \"{}\". Known values are: \"{}\"",
+                    location, resource.getKind(), ResourceType.knownKinds());
+            return false;
+        }
+
+        if (!ResourceType.forKind(resource.getKind()).path().equals(path)) {
+            logger.error("skipping \"{}\" | resource is located in wrong directory. kind" +
+                    ": {}, dir:" + " {}", location, resource.getKind(), path);
+            return false;
+        }
+        return true;
+    }
+
+    private static Set<RepositoryResource> collectKind(
+            ResourceType kind,
+            Map<ResourceType, List<RepositoryResource>> parsed,
+            Map<String, RepositoryResource> firstOccurrences
+    ) {
+        Set<RepositoryResource> resources = new HashSet<>();
+
+        for (RepositoryResource resource : parsed.getOrDefault(kind, Collections.emptyList())) {
+            String name = resource.getMetadata().getName();
+            RepositoryResource sameNameResource = firstOccurrences.get(name);
+            if (sameNameResource != null) {
+                // we already encountered resource with same name
+                // ignore both of them
+                logger.error("\"{}/{}\" has the same name as \"{}/{}\". " +
+                                "skipping both of them. this may cause \"{}\" to be undeployed",
+                        resource.getKind(), name,
+                        sameNameResource.getKind(), name,
+                        name);
+                resources.remove(firstOccurrences.get(name));
+                continue;
+            }
+
+            resources.add(resource);
+            firstOccurrences.put(name, resource);
+        }
         return resources;
     }
 
-    private static Set<RepositoryResource> loadBranch(File repositoryRoot) {
+    private static RepositorySnapshot loadBranch(String commitRef, Gitter gitter, Executor executor) {
+        LoadStats stats = new LoadStats();
+        File repositoryRoot = new File(gitter.getConfig().getLocalRepositoryRoot() + "/" + gitter.getBranch());
+        List<ResourceType> kinds = List.of(ResourceType.values());
+        Map<String, RepositoryResource> sources =
+                parseSources(repositoryRoot, kinds, gitter.getContext(), stats, executor);
+        RepositorySnapshot snapshot = new RepositorySnapshot(commitRef, collectBranch(sources), sources);
+        stats.report(gitter.getContext(), gitter.getBranch(), snapshot);
+        return snapshot;
+    }
+
+    private static RepositorySnapshot readBranch(
+            String commitRef,
+            CommitReader reader,
+            GitterContext ctx,
+            String branch,
+            Executor executor
+    ) throws IOException {
+        LoadStats stats = new LoadStats();
+        List<ResourceType> kinds = List.of(ResourceType.values());
+        Map<String, RepositoryResource> sources = parseSources(reader, ctx, commitRef, kinds, stats, executor);
+        RepositorySnapshot snapshot = new RepositorySnapshot(commitRef, collectBranch(sources), sources);
+        stats.report(ctx, branch, snapshot);
+        return snapshot;
+    }
+
+    private static Set<RepositoryResource> collectBranch(Map<String, RepositoryResource> sources) {
+
+        List<ResourceType> kinds = List.of(ResourceType.values());
+        Map<ResourceType, List<RepositoryResource>> parsed = groupByKind(sources, kinds);
 
         Set<RepositoryResource> resources = new HashSet<>();
         Map<String, RepositoryResource> firstOccurrences = new HashMap<>();
-        for (ResourceType t : ResourceType.values()) {
-            resources.addAll(loadKind(repositoryRoot, t, firstOccurrences));
+        for (ResourceType t : kinds) {
+            resources.addAll(collectKind(t, parsed, firstOccurrences));
         }
 
-        return resources;
+        // snapshots are shared through the snapshot cache
+        return Collections.unmodifiableSet(resources);
+    }
+
+    private static RepositorySnapshot refreshBranch(
+            Gitter gitter,
+            RepositorySnapshot previous,
+            String commitRef,
+            Executor executor
+    ) throws IOException {
+
+        LoadStats stats = new LoadStats();
+        File repositoryRoot = new File(gitter.getConfig().getLocalRepositoryRoot() + "/" + gitter.getBranch());
+        List<DiffEntry> changes = gitter.diff(previous.getCommitRef(), commitRef);
+        Set<String> paths = pathsOf(List.of(ResourceType.values()));
+
+        Map<String, RepositoryResource> sources = new LinkedHashMap<>(previous.getSources());
+        Map<String, Supplier<RepositoryResource>> results = new LinkedHashMap<>();
+        for (DiffEntry change : changes) {
+            if (change.getChangeType() != DiffEntry.ChangeType.ADD) {
+                sources.remove(change.getOldPath());
+            }
+            if (change.getChangeType() == DiffEntry.ChangeType.DELETE) {
+                continue;
+            }
+
+            String file = change.getNewPath();
+            int index = file.lastIndexOf("/");
+            String path = index < 0 ? "" : file.substring(0, index);
+            if (paths.contains(path) && (file.endsWith(YML_ALIAS) || file.endsWith(YAML_ALIAS))) {
+                results.put(file, parse(new File(repositoryRoot, file), path, gitter.getContext(), stats, executor));
+            }
+        }
+        sources.putAll(join(results));
+
+        logger.debug("refreshed snapshot for branch \"{}\" from {} to {}, {} file(s) changed",
+                gitter.getBranch(), previous.getCommitRef(), commitRef, changes.size());
+        RepositorySnapshot snapshot = new RepositorySnapshot(commitRef, collectBranch(sources), sources);
+        stats.report(gitter.getContext(), gitter.getBranch(), snapshot);
+        return snapshot;
     }
 
     private static <T> File fileFor(Gitter gitter, GenericResource<T> resource, String extension) {
@@ -194,19 +537,9 @@ public class Repository {
         return resourceName.length() < RESOURCE_NAME_MAX_LENGTH;
     }
 
-    private static String digest(String data) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] digest = md.digest(data.getBytes());
-            StringBuilder sb = new StringBuilder();
-            for (byte b : digest) {
-                sb.append(String.format("%02x", b));
-            }
-
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
+    @FunctionalInterface
+    private interface ResourceLoader {
+        RepositoryResource load() throws IOException;
     }
 
     /**
@@ -247,7 +580,7 @@ public class Repository {
             gitter.checkout();
         }
 
-        return Repository.loadKind(new File(path), kind);
+        return Repository.loadKind(new File(path), kind, gitter.getContext());
     }
 
     /**
@@ -278,6 +611,24 @@ public class Repository {
      */
     public static Set<RepositoryResource> getAllBoxesAndStores(Gitter gitter, boolean checkout)
             throws IOException, GitAPIException {
+        return getAllBoxesAndStores(gitter, checkout, null);
+    }
+
+    /**
+     * This method will checkout latest version from the repository
+     * and will create RepositorySnapshot from it.
+     *
+     * @param gitter   Gitter object that will be used to checkout data from the repository.
+     *                 Must be locked externally as this method does not lock repository by itself
+     * @param checkout indicates whether the gig checkout should be performed
+     * @param executor executor used to parse resource files concurrently,
+     *                 null to parse them on the caller's thread
+     * @return Latest versions of resources for Th2Box, Th2CoreBox, Th2Estore and Th2Mstore kind
+     * @throws IOException     If repository IO operation fails
+     * @throws GitAPIException If git checkout operation fails
+     */
+    public static Set<RepositoryResource> getAllBoxesAndStores(Gitter gitter, boolean checkout, Executor executor)
+            throws IOException, GitAPIException {
 
         String path = gitter.getConfig().getLocalRepositoryRoot() + "/" + gitter.getBranch();
 
@@ -285,10 +636,21 @@ public class Repository {
             gitter.checkout();
         }
 
-        Set<RepositoryResource> resources = new HashSet<>(Repository.loadKind(new File(path), ResourceType.Th2Box));
-        resources.addAll(Repository.loadKind(new File(path), ResourceType.Th2CoreBox));
-        resources.addAll(Repository.loadKind(new File(path), ResourceType.Th2Estore));
-        resources.addAll(Repository.loadKind(new File(path), ResourceType.Th2Mstore));
+        List<ResourceType> kinds = List.of(
+                ResourceType.Th2Box,
+                ResourceType.Th2CoreBox,
+                ResourceType.Th2Estore,
+                ResourceType.Th2Mstore
+        );
+        GitterContext ctx = gitter.getContext();
+        Map<String, RepositoryResource> sources = Repository.parseSources(new File(path), kinds, ctx, null, executor);
+        Map<ResourceType, List<RepositoryResource>> parsed = Repository.groupByKind(sources, kinds);
+
+        // each kind is checked for duplicate names separately
+        Set<RepositoryResource> resources = new HashSet<>();
+        for (ResourceType t : kinds) {
+            resources.addAll(Repository.collectKind(t, parsed, new HashMap<>()));
+        }
 
         return resources;
     }
@@ -296,20 +658,287 @@ public class Repository {
     /**
      * This method will checkout latest version from the repository
      * and will create RepositorySnapshot from it.
+     * If snapshot cache of the gitter's context is enabled, snapshot for the same
+     * branch and commit is returned from the cache instead of being reloaded.
+     * The same snapshot instance may be returned to other callers, so it is read-only: its set of resources
+     * is unmodifiable and resources must not be modified either, copy them before changing metadata or spec.
      *
      * @param gitter Gitter object that will be used to checkout data from the repository.
      *               Must be locked externally as this method does not lock repository by itself
-     * @return Latest snapshot of repository
+     * @return Latest snapshot of repository, shared with other callers and read-only
      * @throws IOException     If repository IO operation fails
      * @throws GitAPIException If git checkout operation fails
      */
     public static RepositorySnapshot getSnapshot(Gitter gitter) throws IOException, GitAPIException {
+        return getSnapshot(gitter, null);
+    }
+
+    /**
+     * This method will checkout latest version from the repository
+     * and will create RepositorySnapshot from it, parsing resource files
+     * on the given executor. Produced snapshot is the same as the one
+     * created by {@link #getSnapshot(Gitter)}.
+     *
+     * <pre>
+     * {@code
+     * RepositorySnapshot snapshot = Repository.getSnapshot(gitter, ForkJoinPool.commonPool());
+     * }
+     * </pre>
+     *
+     * @param gitter   Gitter object that will be used to checkout data from the repository.
+     *                 Must be locked externally as this method does not lock repository by itself
+     * @param executor executor used to parse resource files concurrently,
+     *                 null to parse them on the caller's thread
+     * @return Latest snapshot of repository, shared with other callers and read-only, see {@link #getSnapshot(Gitter)}
+     * @throws IOException     If repository IO operation fails
+     * @throws GitAPIException If git checkout operation fails
+     */
+    public static RepositorySnapshot getSnapshot(Gitter gitter, Executor executor)
+            throws IOException, GitAPIException {
+
+        return snapshotOf(gitter, gitter.checkout(), executor);
+    }
+
+    /**
+     * Loads snapshots of several branches concurrently, each of them same as {@link #getSnapshot(Gitter)}.
+     * Branches are downloaded into the shared object store with single fetch, then every branch is checked out
+     * and loaded by its own task on the executor. Task holds exclusive lock of the branch's Gitter only while
+     * checking out and shared lock while parsing files, so other readers of the branch are not blocked by parsing.
+     * If single fetch fails, e.g. because one of the branches was deleted, every task downloads its branch
+     * on its own, so that failure of one branch does not affect the others.
+     *
+     * <pre>
+     * {@code
+     * Repository.getSnapshots(ctx, branches, executor).forEach((branch, result) ->
+     *         result.thenAccept(snapshot -> {
+     *             // handle snapshot as soon as the branch is loaded
+     *         }));
+     * }
+     * </pre>
+     *
+     * @param ctx      context of the repository, Gitters of the branches are retrieved from it.
+     *                 Gitters must not be locked by the caller's thread
+     * @param branches names of the branches to load
+     * @param executor executor to run tasks on, its parallelism bounds number of branches loaded at the same time
+     * @return Map, whose keys are branch names in the order of given collection and values complete with
+     * the snapshot as soon as the branch is loaded, or exceptionally if it can not be loaded
+     */
+    public static Map<String, CompletableFuture<RepositorySnapshot>> getSnapshots(
+            GitterContext ctx,
+            Collection<String> branches,
+            Executor executor
+    ) {
+        Map<String, CompletableFuture<RepositorySnapshot>> snapshots = new LinkedHashMap<>();
+        if (branches.isEmpty()) {
+            return snapshots;
+        }
+
+        List<String> fetch = List.copyOf(new LinkedHashSet<>(branches));
+        CompletableFuture<Boolean> fetched = CompletableFuture.supplyAsync(() -> {
+            try {
+                ctx.fetchBranches(fetch);
+                return true;
+            } catch (Exception e) {
+                logger.warn("error fetching branches {} at once, fetching them one by one", fetch, e);
+                return false;
+            }
+        }, executor);
+
+        for (String branch : fetch) {
+            snapshots.put(branch, fetched.thenApplyAsync(
+                    ok -> lockAndGetSnapshot(ctx.getGitter(branch), !ok), executor));
+        }
+        return snapshots;
+    }
+
+    /**
+     * Same as {@link #getSnapshots(GitterContext, Collection, Executor)}, running tasks on a new pool
+     * of the given number of threads, which is shut down once all branches are loaded
+     *
+     * @param ctx         context of the repository, Gitters of the branches are retrieved from it.
+     *                    Gitters must not be locked by the caller's thread
+     * @param branches    names of the branches to load
+     * @param parallelism maximum number of branches loaded at the same time
+     * @return Map, whose keys are branch names in the order of given collection and values complete with
+     * the snapshot as soon as the branch is loaded, or exceptionally if it can not be loaded
+     */
+    public static Map<String, CompletableFuture<RepositorySnapshot>> getSnapshots(
+            GitterContext ctx,
+            Collection<String> branches,
+            int parallelism
+    ) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "snapshot-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<String, CompletableFuture<RepositorySnapshot>> snapshots = getSnapshots(ctx, branches, executor);
+        CompletableFuture.allOf(snapshots.values().toArray(CompletableFuture[]::new))
+                .whenComplete((result, e) -> executor.shutdown());
+        return snapshots;
+    }
+
+    /**
+     * Same as {@link #getSnapshot(Gitter)}, but locks Gitter by itself and coalesces concurrent calls for
+     * the same branch: the first caller checks out and loads the branch, while callers arriving before it
+     * completes wait for it and receive the same snapshot instead of checking out and loading the branch again.
+     * If the first caller fails, all of them fail with the same exception.
+     * If caller's thread already holds lock of the Gitter, calls are not coalesced,
+     * as waiting for another thread could deadlock
+     *
+     * <pre>
+     * {@code
+     * // no need to lock the gitter
+     * RepositorySnapshot snapshot = Repository.getLatestSnapshot(gitter);
+     * }
+     * </pre>
+     *
+     * @param gitter Gitter object that will be used to checkout data from the repository
+     * @return Latest snapshot of repository, shared with other callers and read-only, see {@link #getSnapshot(Gitter)}
+     * @throws IOException     If repository IO operation fails
+     * @throws GitAPIException If git checkout operation fails
+     */
+    public static RepositorySnapshot getLatestSnapshot(Gitter gitter) throws IOException, GitAPIException {
+
+        if (gitter.isHeldByCurrentThread()) {
+            return getSnapshot(gitter);
+        }
+
+        CompletableFuture<RepositorySnapshot> flight = new CompletableFuture<>();
+        CompletableFuture<RepositorySnapshot> inFlight = FLIGHTS.putIfAbsent(gitter, flight);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                return rethrow(e.getCause());
+            }
+        }
+
+        try {
+            RepositorySnapshot snapshot = lockAndGetSnapshot(gitter, true);
+            // callers arriving after this point start new checkout, as remote branch might have moved since
+            FLIGHTS.remove(gitter, flight);
+            flight.complete(snapshot);
+            return snapshot;
+        } catch (Throwable e) {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            FLIGHTS.remove(gitter, flight);
+            flight.completeExceptionally(cause);
+            return rethrow(cause);
+        }
+    }
+
+    private static RepositorySnapshot rethrow(Throwable e) throws IOException, GitAPIException {
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+        if (e instanceof GitAPIException) {
+            throw (GitAPIException) e;
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new IOException(e);
+    }
+
+    private static RepositorySnapshot lockAndGetSnapshot(Gitter gitter, boolean fetchRemote) {
+        try {
+            String commitRef;
+            gitter.lock();
+            try {
+                commitRef = gitter.checkout(fetchRemote);
+                // downgrade, so that working tree stays at the commit while files are parsed
+                gitter.lockRead();
+            } finally {
+                gitter.unlock();
+            }
+            try {
+                return snapshotOf(gitter, commitRef, null);
+            } finally {
+                gitter.unlockRead();
+            }
+        } catch (IOException | GitAPIException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static RepositorySnapshot snapshotOf(Gitter gitter, String commitRef, Executor executor) {
+
+        SnapshotCache cache = gitter.getContext().getSnapshotCache();
+        RepositorySnapshot snapshot = cache.get(gitter.getBranch(), commitRef);
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        snapshot = Repository.loadBranch(commitRef, gitter, executor);
+        cache.put(gitter.getBranch(), snapshot);
+
+        return snapshot;
+    }
+
+    /**
+     * This method will checkout latest version from the repository and will create
+     * RepositorySnapshot from it by applying changes made since the previous snapshot.
+     * Only files added, modified or deleted between the two commits are parsed,
+     * resources of unchanged files are carried over from the previous snapshot as is.
+     * Falls back to full reload if previous snapshot was not created by this class or
+     * changes between commits can not be determined.
+     *
+     * @param gitter   Gitter object that will be used to checkout data from the repository.
+     *                 Must be locked externally as this method does not lock repository by itself
+     * @param previous snapshot previously loaded for the same branch
+     * @return Latest snapshot of repository, shared with other callers and read-only, see {@link #getSnapshot(Gitter)}
+     * @throws IOException     If repository IO operation fails
+     * @throws GitAPIException If git checkout operation fails
+     */
+    public static RepositorySnapshot refreshSnapshot(Gitter gitter, RepositorySnapshot previous)
+            throws IOException, GitAPIException {
+        return refreshSnapshot(gitter, previous, null);
+    }
+
+    /**
+     * Same as {@link #refreshSnapshot(Gitter, RepositorySnapshot)}, parsing changed files on the given executor
+     *
+     * @param gitter   Gitter object that will be used to checkout data from the repository.
+     *                 Must be locked externally as this method does not lock repository by itself
+     * @param previous snapshot previously loaded for the same branch
+     * @param executor executor used to parse resource files concurrently,
+     *                 null to parse them on the caller's thread
+     * @return Latest snapshot of repository, shared with other callers and read-only, see {@link #getSnapshot(Gitter)}
+     * @throws IOException     If repository IO operation fails
+     * @throws GitAPIException If git checkout operation fails
+     */
+    public static RepositorySnapshot refreshSnapshot(Gitter gitter, RepositorySnapshot previous, Executor executor)
+            throws IOException, GitAPIException {
+
+        if (previous == null || previous.getSources() == null) {
+            return getSnapshot(gitter, executor);
+        }
 
-        String path = gitter.getConfig().getLocalRepositoryRoot() + "/" + gitter.getBranch();
         String commitRef = gitter.checkout();
-        Set<RepositoryResource> resources = Repository.loadBranch(new File(path));
+        if (commitRef.equals(previous.getCommitRef())) {
+            return previous;
+        }
+
+        SnapshotCache cache = gitter.getContext().getSnapshotCache();
+        RepositorySnapshot snapshot = cache.get(gitter.getBranch(), commitRef);
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        try {
+            snapshot = Repository.refreshBranch(gitter, previous, commitRef, executor);
+        } catch (IOException e) {
+            logger.warn("could not compute changes for branch \"{}\" between {} and {}, reloading snapshot",
+                    gitter.getBranch(), previous.getCommitRef(), commitRef, e);
+            snapshot = Repository.loadBranch(commitRef, gitter, executor);
+        }
+        cache.put(gitter.getBranch(), snapshot);
 
-        return new RepositorySnapshot(commitRef, resources);
+        return snapshot;
     }
 
     /**
@@ -340,7 +969,8 @@ public class Repository {
      * and will return file for given name parameter.
      *
      * @param gitter       Gitter object that will be used to checkout data from the repository.
-     *                     Must be locked externally as this method does not lock repository by itself
+     *                     Must be locked externally as this method does not lock repository by itself,
+     *                     shared lock acquired with {@link Gitter#lockRead()} is enough
      * @param kind         Kind of resource
      * @param resourceName name of the RepositoryResource that will be loaded from the the repository
      * @return loaded RepositoryResource
@@ -359,6 +989,178 @@ public class Repository {
         }
     }
 
+    /**
+     * This method will create RepositorySnapshot for given revision reading files straight from the local
+     * repository's object database. Working tree is neither read nor modified, so snapshots of any commit,
+     * branch or tag present in local repository can be created. Use {@link Gitter#fetch()} to download
+     * latest version of the branch without checking it out.
+     *
+     * <pre>
+     * {@code
+     * RepositorySnapshot snapshot = Repository.readSnapshot(gitter, gitter.fetch());
+     * }
+     * </pre>
+     *
+     * @param gitter   Gitter object for which local repository will be read.
+     *                 Must be locked externally as this method does not lock repository by itself
+     * @param revision commit ref, branch or tag to read
+     * @return Snapshot of repository at given revision,
+     * shared with other callers and read-only, see {@link #getSnapshot(Gitter)}
+     * @throws IOException              If repository IO operation fails
+     * @throws IllegalArgumentException If revision can not be resolved
+     */
+    public static RepositorySnapshot readSnapshot(Gitter gitter, String revision) throws IOException {
+        return readSnapshot(gitter, revision, null);
+    }
+
+    /**
+     * Same as {@link #readSnapshot(Gitter, String)}, parsing resource files on the given executor
+     *
+     * @param gitter   Gitter object for which local repository will be read.
+     *                 Must be locked externally as this method does not lock repository by itself
+     * @param revision commit ref, branch or tag to read
+     * @param executor executor used to parse resource files concurrently,
+     *                 null to parse them on the caller's thread
+     * @return Snapshot of repository at given revision,
+     * shared with other callers and read-only, see {@link #getSnapshot(Gitter)}
+     * @throws IOException              If repository IO operation fails
+     * @throws IllegalArgumentException If revision can not be resolved
+     */
+    public static RepositorySnapshot readSnapshot(Gitter gitter, String revision, Executor executor)
+            throws IOException {
+
+        return readSnapshot(gitter, gitter.getContext(), gitter.getBranch(), revision, executor);
+    }
+
+    /**
+     * Same as {@link #readSnapshot(Gitter, String)}, but reads the commit straight from the object store
+     * shared by all branches of the context, see {@link GitterContext#getStoreReader()}.
+     * Local cache of the branch is neither created nor accessed, so no lock is needed.
+     * The commit must have been downloaded by {@link GitterContext#fetchBranches(Collection)}
+     * or {@link GitterContext#fetchAllBranches()}
+     *
+     * @param ctx      context whose object store will be read
+     * @param branch   branch the commit belongs to, snapshots are cached per branch
+     * @param revision commit ref, branch or tag to read
+     * @return Snapshot of repository at given revision,
+     * shared with other callers and read-only, see {@link #getSnapshot(Gitter)}
+     * @throws IOException              If repository IO operation fails
+     * @throws IllegalArgumentException If revision can not be resolved
+     */
+    public static RepositorySnapshot readStoredSnapshot(GitterContext ctx, String branch, String revision)
+            throws IOException {
+
+        return readSnapshot(ctx.getStoreReader(), ctx, branch, revision, null);
+    }
+
+    private static RepositorySnapshot readSnapshot(
+            CommitReader reader,
+            GitterContext ctx,
+            String branch,
+            String revision,
+            Executor executor
+    ) throws IOException {
+
+        String commitRef = reader.resolve(revision);
+
+        SnapshotCache cache = ctx.getSnapshotCache();
+        RepositorySnapshot snapshot = cache.get(branch, commitRef);
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        snapshot = Repository.readBranch(commitRef, reader, ctx, branch, executor);
+        cache.put(branch, snapshot);
+
+        return snapshot;
+    }
+
+    /**
+     * Creates RepositorySnapshot of the latest commit of the branch downloaded to local cache, reading files
+     * straight from the local repository's object database. Neither remote repository nor working tree are
+     * accessed, so no lock is needed: readers are not blocked by checkouts and pushes in progress on the same
+     * branch and always see a complete commit, the one before or the one after the concurrent operation.
+     * Snapshots created by {@link #getSnapshot(Gitter)} for the same commit are reused from the snapshot cache
+     *
+     * @param gitter Gitter object for which local repository will be read
+     * @return Snapshot of repository at the latest downloaded commit,
+     * shared with other callers and read-only, see {@link #getSnapshot(Gitter)}
+     * @throws IOException              If repository IO operation fails
+     * @throws IllegalArgumentException If the branch was never downloaded to local cache
+     */
+    public static RepositorySnapshot readCurrentSnapshot(Gitter gitter) throws IOException {
+        return readSnapshot(gitter, Gitter.REFS_REMOTES + gitter.getBranch(), null);
+    }
+
+    /**
+     * Loads resources of given kind for given revision reading files straight from
+     * the local repository's object database, without using the working tree
+     *
+     * @param gitter   Gitter object for which local repository will be read.
+     *                 Must be locked externally as this method does not lock repository by itself
+     * @param revision commit ref, branch or tag to read
+     * @param kind     what kind of resources to load
+     * @return Resources of given kind at given revision
+     * @throws IOException              If repository IO operation fails
+     * @throws IllegalArgumentException If revision can not be resolved
+     */
+    public static Set<RepositoryResource> readResourcesByKind(Gitter gitter, String revision, ResourceType kind)
+            throws IOException {
+
+        List<ResourceType> kinds = List.of(kind);
+        Map<String, RepositoryResource> sources =
+                parseSources(gitter, gitter.getContext(), revision, kinds, null, null);
+        return collectKind(kind, groupByKind(sources, kinds), new HashMap<>());
+    }
+
+    /**
+     * Loads settings file for given revision reading it straight from
+     * the local repository's object database, without using the working tree
+     *
+     * @param gitter   Gitter object for which local repository will be read.
+     *                 Must be locked externally as this method does not lock repository by itself
+     * @param revision commit ref, branch or tag to read
+     * @return Settings file
+     * @throws IOException              If repository IO operation fails or settings file does not exist
+     * @throws IllegalArgumentException If revision can not be resolved
+     */
+    public static RepositorySettingsResource readSettings(Gitter gitter, String revision) throws IOException {
+        String path = ResourceType.SettingsFile.path();
+        return JSON_MAPPER.convertValue(readFile(gitter, revision, path, SETTINGS_FILE_NAME),
+                RepositorySettingsResource.class);
+    }
+
+    /**
+     * Loads resource for given revision reading it straight from
+     * the local repository's object database, without using the working tree
+     *
+     * @param gitter       Gitter object for which local repository will be read.
+     *                     Must be locked externally as this method does not lock repository by itself
+     * @param revision     commit ref, branch or tag to read
+     * @param kind         Kind of resource
+     * @param resourceName name of the RepositoryResource that will be loaded from the the repository
+     * @return loaded RepositoryResource
+     * @throws IOException              If repository IO operation fails or resource does not exist
+     * @throws IllegalArgumentException If revision can not be resolved
+     */
+    public static RepositoryResource readResource(Gitter gitter, String revision, String kind, String resourceName)
+            throws IOException {
+        return readFile(gitter, revision, ResourceType.forKind(kind).path(), resourceName);
+    }
+
+    private static RepositoryResource readFile(Gitter gitter, String revision, String path, String name)
+            throws IOException {
+
+        Map<String, ObjectId> files = gitter.listFiles(revision, List.of(path));
+        for (String extension : List.of(YML_ALIAS, YAML_ALIAS)) {
+            ObjectId blobId = files.get(relativePath(path, name + extension));
+            if (blobId != null) {
+                return loadYAML(gitter.readBlob(blobId));
+            }
+        }
+        throw new NoSuchFileException(relativePath(path, name + YML_ALIAS));
+    }
+
     /**
      * Adds resource to the local repository, but does not commit or push changes.
      * Throws an IllegalArgumentException if resource with same name and kind already exists
@@ -16,14 +16,130 @@
 
 package com.exactpro.th2.infrarepo.repo;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static com.exactpro.th2.infrarepo.SchemaUtils.JSON_MAPPER;
 
 public class RepositoryResource extends GenericResource<Object> {
 
+    /**
+     * Deserialization attribute, which makes resources read with it keep their spec as buffered tokens.
+     * Spec is converted to objects when {@link #getSpec()} is called for the first time
+     *
+     * <pre>
+     * {@code
+     * YAML_MAPPER.readerFor(RepositoryResource.class)
+     *         .withAttribute(RepositoryResource.LAZY_SPEC, Boolean.TRUE)
+     *         .readValue(contents);
+     * }
+     * </pre>
+     */
+    public static final String LAZY_SPEC = "th2.lazySpec";
+
+    /**
+     * Deserialization attribute holding {@link SpecInterner}, which deduplicates specs of resources read with it.
+     * Applies to lazily read specs as well, when they are materialized
+     */
+    public static final String SPEC_INTERNER = "th2.specInterner";
+
+    // buffered spec of the lazily read resource, released when spec is materialized or replaced
+    private volatile RawSpec rawSpec;
+
     public RepositoryResource() {
     }
 
     public RepositoryResource(String apiVersion, String kind, ObjectMeta metadata, Object spec) {
         super(apiVersion, kind, metadata, spec);
     }
+
+    @Override
+    public Object getSpec() {
+        if (rawSpec != null) {
+            materializeSpec();
+        }
+        return super.getSpec();
+    }
+
+    @Override
+    @JsonDeserialize(using = SpecDeserializer.class)
+    public synchronized void setSpec(Object spec) {
+        if (spec instanceof RawSpec) {
+            rawSpec = (RawSpec) spec;
+            super.setSpec(null);
+        } else {
+            rawSpec = null;
+            super.setSpec(spec);
+        }
+    }
+
+    /**
+     * Returns true if spec of this resource was not converted to objects yet
+     *
+     * @return whether spec is still kept as buffered tokens
+     */
+    @JsonIgnore
+    public boolean isSpecMaterialized() {
+        return rawSpec == null;
+    }
+
+    /**
+     * Creates a copy with its own metadata, sharing spec of this resource. If spec is not materialized yet,
+     * copy shares buffered tokens instead and materializes its own spec objects on demand
+     */
+    synchronized RepositoryResource copy() {
+        ObjectMeta metadata = getMetadata() == null ? null : new ObjectMetaBuilder(getMetadata()).build();
+        RepositoryResource copy = new RepositoryResource(getApiVersion(), getKind(), metadata, super.getSpec());
+        copy.rawSpec = rawSpec;
+        copy.setSourceHash(getSourceHash());
+        return copy;
+    }
+
+    private synchronized void materializeSpec() {
+        if (rawSpec == null) {
+            return;
+        }
+        try (JsonParser parser = rawSpec.tokens.asParser(JSON_MAPPER)) {
+            Object spec = JSON_MAPPER.readValue(parser, Object.class);
+            super.setSpec(rawSpec.interner == null ? spec : rawSpec.interner.intern(spec));
+        } catch (IOException e) {
+            // tokens were produced by the parser that already read them successfully
+            throw new UncheckedIOException(e);
+        }
+        rawSpec = null;
+    }
+
+    private static final class RawSpec {
+        private final TokenBuffer tokens;
+
+        private final SpecInterner interner;
+
+        private RawSpec(TokenBuffer tokens, SpecInterner interner) {
+            this.tokens = tokens;
+            this.interner = interner;
+        }
+    }
+
+    static final class SpecDeserializer extends JsonDeserializer<Object> {
+        @Override
+        public Object deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            SpecInterner interner = (SpecInterner) ctxt.getAttribute(SPEC_INTERNER);
+            if (Boolean.TRUE.equals(ctxt.getAttribute(LAZY_SPEC))) {
+                TokenBuffer tokens = new TokenBuffer(p, ctxt);
+                tokens.copyCurrentStructure(p);
+                return new RawSpec(tokens, interner);
+            }
+            Object spec = ctxt.readValue(p, Object.class);
+            return interner == null ? spec : interner.intern(spec);
+        }
+    }
 }
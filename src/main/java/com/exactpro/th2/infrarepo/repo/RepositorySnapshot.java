@@ -19,6 +19,7 @@ package com.exactpro.th2.infrarepo.repo;
 import com.exactpro.th2.infrarepo.ResourceType;
 import com.exactpro.th2.infrarepo.settings.RepositorySettingsSpec;
 
+import java.util.Map;
 import java.util.Set;
 
 import static com.exactpro.th2.infrarepo.SchemaUtils.JSON_MAPPER;
@@ -29,11 +30,20 @@ public class RepositorySnapshot {
 
     private final Set<RepositoryResource> resources;
 
+    // resources parsed from repository files, keyed by file path,
+    // including ones rejected because of duplicate names
+    private final Map<String, RepositoryResource> sources;
+
     private RepositorySettingsSpec repositorySettingsSpec;
 
     public RepositorySnapshot(String commitRef, Set<RepositoryResource> resources) {
+        this(commitRef, resources, null);
+    }
+
+    RepositorySnapshot(String commitRef, Set<RepositoryResource> resources, Map<String, RepositoryResource> sources) {
         this.commitRef = commitRef;
         this.resources = resources;
+        this.sources = sources;
         for (RepositoryResource resource : resources) {
             if (resource.getKind().equals(ResourceType.SettingsFile.kind())) {
                 repositorySettingsSpec = JSON_MAPPER.convertValue(resource.getSpec(), RepositorySettingsSpec.class);
@@ -52,4 +62,19 @@ public class RepositorySnapshot {
     public RepositorySettingsSpec getRepositorySettingsSpec() {
         return repositorySettingsSpec;
     }
+
+    /**
+     * Returns resources added, removed and changed in this snapshot since the previous one,
+     * so that only resources that actually changed are applied or deleted
+     *
+     * @param previous snapshot to compare with, or null if there is none
+     * @return Changes grouped by resource type
+     */
+    public SnapshotDiff diff(RepositorySnapshot previous) {
+        return SnapshotDiff.between(previous, this);
+    }
+
+    Map<String, RepositoryResource> getSources() {
+        return sources;
+    }
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.repo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of parsed resource files keyed by git blob id or content hash,
+ * so that identical files referenced by different branches and commits are parsed once.
+ * Every lookup returns a new resource instance with its own metadata, but spec objects are shared
+ * between instances created from the same entry and must not be modified.
+ * Specs that were not materialized when the entry was cached are materialized separately by every instance.
+ */
+public class ResourceCache {
+
+    private final int maxEntries;
+
+    private final Map<String, RepositoryResource> entries;
+
+    public ResourceCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RepositoryResource> eldest) {
+                return size() > ResourceCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns true if this cache is able to hold any entries
+     *
+     * @return whether cache is enabled
+     */
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Returns copy of the cached resource, its spec is shared with the cached entry and must not be modified
+     *
+     * @param key blob id or content hash of the resource file
+     * @return cached resource or null if there is no such entry
+     */
+    public RepositoryResource get(String key) {
+        RepositoryResource resource;
+        synchronized (this) {
+            resource = entries.get(key);
+        }
+        return resource == null ? null : resource.copy();
+    }
+
+    /**
+     * Caches copy of the resource, evicting least recently used entries if cache is full
+     *
+     * @param key      blob id or content hash of the resource file
+     * @param resource parsed resource
+     */
+    public void put(String key, RepositoryResource resource) {
+        if (isEnabled()) {
+            RepositoryResource copy = resource.copy();
+            synchronized (this) {
+                entries.put(key, copy);
+            }
+        }
+    }
+
+    /**
+     * Removes all cached resources
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
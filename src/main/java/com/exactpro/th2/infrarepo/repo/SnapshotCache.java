@@ -0,0 +1,99 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.repo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of repository snapshots keyed by branch and commit ref.
+ * Cached snapshots are shared between callers and must not be modified.
+ */
+public class SnapshotCache {
+
+    private final int maxEntries;
+
+    private final Map<String, RepositorySnapshot> entries;
+
+    public SnapshotCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RepositorySnapshot> eldest) {
+                return size() > SnapshotCache.this.maxEntries;
+            }
+        };
+    }
+
+    private static String key(String branch, String commitRef) {
+        // ':' is not allowed in git branch names
+        return branch + ":" + commitRef;
+    }
+
+    /**
+     * Returns true if this cache is able to hold any entries
+     *
+     * @return whether cache is enabled
+     */
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Returns cached snapshot for given branch and commit
+     *
+     * @param branch    branch name
+     * @param commitRef commit ref of the snapshot
+     * @return cached snapshot or null if there is no such entry
+     */
+    public synchronized RepositorySnapshot get(String branch, String commitRef) {
+        return entries.get(key(branch, commitRef));
+    }
+
+    /**
+     * Caches snapshot for given branch, evicting least recently used entries if cache is full
+     *
+     * @param branch   branch name
+     * @param snapshot snapshot to cache
+     */
+    public synchronized void put(String branch, RepositorySnapshot snapshot) {
+        if (isEnabled()) {
+            entries.put(key(branch, snapshot.getCommitRef()), snapshot);
+        }
+    }
+
+    /**
+     * Removes all cached snapshots for given branch
+     *
+     * @param branch branch name
+     */
+    public synchronized void invalidate(String branch) {
+        String prefix = branch + ":";
+        entries.keySet().removeIf(k -> k.startsWith(prefix));
+    }
+
+    /**
+     * Removes all cached snapshots
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.repo;
+
+import com.exactpro.th2.infrarepo.ResourceType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resources added, removed and changed between two repository snapshots, grouped by resource type.
+ * Resources are matched by kind and name and are considered changed if their source hashes differ.
+ * Resources without source hash can not be compared and are always reported as changed
+ */
+public class SnapshotDiff {
+
+    private final Map<ResourceType, List<RepositoryResource>> added = new EnumMap<>(ResourceType.class);
+
+    private final Map<ResourceType, List<RepositoryResource>> removed = new EnumMap<>(ResourceType.class);
+
+    private final Map<ResourceType, List<RepositoryResource>> changed = new EnumMap<>(ResourceType.class);
+
+    private SnapshotDiff() {
+    }
+
+    /**
+     * Computes changes that turn one snapshot into another
+     *
+     * @param from snapshot to compare from, null is treated as snapshot without resources
+     * @param to   snapshot to compare to
+     * @return Resources of "to" snapshot that are added or changed and resources of "from" snapshot that are removed
+     */
+    public static SnapshotDiff between(RepositorySnapshot from, RepositorySnapshot to) {
+
+        Map<ResourceType, Map<String, RepositoryResource>> previous = new EnumMap<>(ResourceType.class);
+        if (from != null) {
+            for (RepositoryResource resource : from.getResources()) {
+                ResourceType type = ResourceType.forKind(resource.getKind());
+                if (type != null) {
+                    previous.computeIfAbsent(type, t -> new HashMap<>())
+                            .put(resource.getMetadata().getName(), resource);
+                }
+            }
+        }
+
+        SnapshotDiff diff = new SnapshotDiff();
+        for (RepositoryResource resource : to.getResources()) {
+            ResourceType type = ResourceType.forKind(resource.getKind());
+            if (type == null) {
+                continue;
+            }
+
+            Map<String, RepositoryResource> sameType = previous.get(type);
+            RepositoryResource old = sameType == null ? null : sameType.remove(resource.getMetadata().getName());
+            if (old == null) {
+                add(diff.added, type, resource);
+            } else if (old.getSourceHash() == null || !old.getSourceHash().equals(resource.getSourceHash())) {
+                add(diff.changed, type, resource);
+            }
+        }
+
+        // whatever was not matched does not exist anymore
+        previous.forEach((type, resources) -> resources.values().forEach(r -> add(diff.removed, type, r)));
+        return diff;
+    }
+
+    private static void add(Map<ResourceType, List<RepositoryResource>> group, ResourceType type,
+                            RepositoryResource resource) {
+        group.computeIfAbsent(type, t -> new ArrayList<>()).add(resource);
+    }
+
+    /**
+     * Returns resources that were not present in "from" snapshot
+     *
+     * @return Map, whose keys are resource types and values are added resources of that type
+     */
+    public Map<ResourceType, List<RepositoryResource>> getAdded() {
+        return Collections.unmodifiableMap(added);
+    }
+
+    /**
+     * Returns resources of "from" snapshot that are not present in "to" snapshot
+     *
+     * @return Map, whose keys are resource types and values are removed resources of that type
+     */
+    public Map<ResourceType, List<RepositoryResource>> getRemoved() {
+        return Collections.unmodifiableMap(removed);
+    }
+
+    /**
+     * Returns new versions of the resources, whose source differs between snapshots
+     *
+     * @return Map, whose keys are resource types and values are changed resources of that type
+     */
+    public Map<ResourceType, List<RepositoryResource>> getChanged() {
+        return Collections.unmodifiableMap(changed);
+    }
+
+    public List<RepositoryResource> getAdded(ResourceType type) {
+        return added.getOrDefault(type, List.of());
+    }
+
+    public List<RepositoryResource> getRemoved(ResourceType type) {
+        return removed.getOrDefault(type, List.of());
+    }
+
+    public List<RepositoryResource> getChanged(ResourceType type) {
+        return changed.getOrDefault(type, List.of());
+    }
+
+    /**
+     * Returns true if snapshots contain same resources with same sources
+     *
+     * @return whether there are no changes
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("added: %s, removed: %s, changed: %s", names(added), names(removed), names(changed));
+    }
+
+    private static Map<ResourceType, List<String>> names(Map<ResourceType, List<RepositoryResource>> group) {
+        Map<ResourceType, List<String>> names = new EnumMap<>(ResourceType.class);
+        group.forEach((type, resources) -> {
+            List<String> list = new ArrayList<>(resources.size());
+            resources.forEach(r -> list.add(r.getMetadata().getName()));
+            names.put(type, list);
+        });
+        return names;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2023 Exactpro (Exactpro Systems Limited)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exactpro.th2.infrarepo.repo;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Deduplicates deserialized resource specs, so that specs of many resources, branches and cached snapshots
+ * share equal strings and subtrees instead of holding their own copies.
+ * Map keys and scalar strings up to {@value #MAX_SCALAR_LENGTH} characters are interned, longer strings,
+ * such as dictionary contents, are rarely repeated and are kept as is. Maps and lists are replaced with
+ * canonical unmodifiable instances, which cache their hash codes, so that interning a deep spec hashes
+ * every subtree only once. Canonical strings and subtrees are referenced weakly and are released when
+ * no spec uses them anymore.
+ * <p>
+ * Specs read with interner can not be modified
+ *
+ * <pre>
+ * {@code
+ * YAML_MAPPER.readerFor(RepositoryResource.class)
+ *         .withAttribute(RepositoryResource.SPEC_INTERNER, interner)
+ *         .readValue(contents);
+ * }
+ * </pre>
+ */
+public class SpecInterner {
+
+    public static final int MAX_SCALAR_LENGTH = 128;
+
+    private final Map<String, WeakReference<String>> strings = new WeakHashMap<>();
+
+    private final Map<Object, WeakReference<Object>> subtrees = new WeakHashMap<>();
+
+    /**
+     * Returns deduplicated equivalent of the deserialized spec value
+     *
+     * @param value spec or its part, consisting of maps, lists, strings and other scalars
+     * @return canonical instance equal to the value
+     */
+    public Object intern(Object value) {
+        if (value instanceof String) {
+            String string = (String) value;
+            return string.length() > MAX_SCALAR_LENGTH ? string : share(strings, string);
+        }
+        if (value instanceof SharedMap || value instanceof SharedList) {
+            return value;
+        }
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            Map<Object, Object> copy = new LinkedHashMap<>(map.size() * 4 / 3 + 1);
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                Object key = e.getKey() instanceof String ? share(strings, (String) e.getKey()) : e.getKey();
+                copy.put(key, intern(e.getValue()));
+            }
+            return share(subtrees, new SharedMap(copy));
+        }
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            List<Object> copy = new ArrayList<>(list.size());
+            for (Object item : list) {
+                copy.add(intern(item));
+            }
+            return share(subtrees, new SharedList(copy));
+        }
+        return value;
+    }
+
+    // children are already canonical, so equal subtrees are mostly compared by identity
+    private synchronized <T> T share(Map<T, WeakReference<T>> canonicals, T value) {
+        WeakReference<T> ref = canonicals.get(value);
+        T canonical = ref == null ? null : ref.get();
+        if (canonical == null) {
+            canonicals.put(value, new WeakReference<>(value));
+            canonical = value;
+        }
+        return canonical;
+    }
+
+    /**
+     * Returns number of distinct subtrees currently held by the interner
+     *
+     * @return number of canonical maps and lists
+     */
+    public synchronized int size() {
+        return subtrees.size();
+    }
+
+    // hash code is computed once from cached hash codes of the canonical children
+    private static final class SharedMap extends AbstractMap<Object, Object> {
+
+        private final Map<Object, Object> map;
+
+        private final int hash;
+
+        private SharedMap(Map<Object, Object> map) {
+            this.map = Collections.unmodifiableMap(map);
+            this.hash = map.hashCode();
+        }
+
+        @Override
+        public Set<Entry<Object, Object>> entrySet() {
+            return map.entrySet();
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public Object get(Object key) {
+            return map.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (o instanceof SharedMap && ((SharedMap) o).hash != hash) {
+                return false;
+            }
+            return map.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class SharedList extends AbstractList<Object> implements RandomAccess {
+
+        private final List<Object> list;
+
+        private final int hash;
+
+        private SharedList(List<Object> list) {
+            this.list = list;
+            this.hash = list.hashCode();
+        }
+
+        @Override
+        public Object get(int index) {
+            return list.get(index);
+        }
+
+        @Override
+        public int size() {
+            return list.size();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (o instanceof SharedList && ((SharedList) o).hash != hash) {
+                return false;
+            }
+            return list.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}